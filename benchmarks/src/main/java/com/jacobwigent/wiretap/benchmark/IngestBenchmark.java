@@ -0,0 +1,120 @@
+package com.jacobwigent.wiretap.benchmark;
+
+import com.jacobwigent.wiretap.serial.LineFramer;
+import com.jacobwigent.wiretap.serial.MessageHandler;
+import com.jacobwigent.wiretap.serial.SerialRingBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+    Throughput of the ingest path: raw reads into MessageHandler (capture store, framing and line store),
+    and the framer alone. Reads go through a SerialRingBuffer cursor and reach the handler as SerialDispatcher
+    delivers them, copied out of the ring, just without the thread hop. Reported "bytes" is the serial byte rate;
+    run with -prof gc for allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class IngestBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int chunkSize;
+
+    @Param({"16", "80", "512"})
+    public int lineLength;
+
+    @Param({"LF", "CRLF", "CR"})
+    public SyntheticStream.Newline newline;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    private SyntheticStream stream;
+    private Path captureRoot;
+    private MessageHandler handler;
+    private LineFramer framer;
+    private long lineEnds;
+    private SerialRingBuffer ring;
+    private SerialRingBuffer.Cursor cursor;
+    private SerialRingBuffer.ChunkHandler delivery;
+    private ByteBuffer view;
+
+    @Setup(Level.Trial)
+    public void createStream() {
+        stream = new SyntheticStream(chunkSize, lineLength, newline);
+        ring = new SerialRingBuffer(1 << 16, 64);
+        cursor = ring.newCursor();
+        // The same wrapping SerialDispatcher does
+        delivery = (data, offset, length, timestamp) -> {
+            if (view == null || view.array() != data) {
+                view = ByteBuffer.wrap(data);
+            }
+            view.clear();
+            view.limit(offset + length).position(offset);
+            handler.onSerialBytes(view, timestamp);
+        };
+        LineFramer.Delimiter delimiter = LineFramer.Delimiter.valueOf(newline.name());
+        framer = new LineFramer(delimiter, (byte) 0, new LineFramer.LineSink() {
+            @Override
+            public void onLineData(byte[] data, int offset, int length) {}
+
+            @Override
+            public void onLineEnd() {
+                lineEnds++;
+            }
+        });
+    }
+
+    // A fresh handler per iteration keeps the capture on disk and the line store bounded
+    @Setup(Level.Iteration)
+    public void createHandler() throws IOException {
+        captureRoot = Files.createTempDirectory("wiretap-bench");
+        handler = new MessageHandler(() -> {}, captureRoot);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCapture() throws IOException {
+        handler.close();
+        handler = null;
+        try (Stream<Path> files = Files.walk(captureRoot)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void messageHandler(Counters counters) {
+        ByteBuffer chunk = stream.next();
+        int length = chunk.remaining();
+        counters.bytes += length;
+        int offset = ring.claim(length);
+        chunk.get(ring.array(), offset, length);
+        ring.publish(length, System.nanoTime());
+        cursor.poll(delivery, 1);
+    }
+
+    @Benchmark
+    public long lineFramer(Counters counters) {
+        ByteBuffer chunk = stream.next();
+        counters.bytes += chunk.remaining();
+        framer.feed(chunk);
+        return lineEnds;
+    }
+}
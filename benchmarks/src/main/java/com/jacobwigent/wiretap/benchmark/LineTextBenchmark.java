@@ -0,0 +1,69 @@
+package com.jacobwigent.wiretap.benchmark;
+
+import com.jacobwigent.wiretap.serial.LineStore;
+import com.jacobwigent.wiretap.serial.SerialLine;
+import com.jacobwigent.wiretap.serial.SerialMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of turning an assembled line back into display text, and of formatting its timestamp
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineTextBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int fragments;
+
+    @Param({"80"})
+    public int lineLength;
+
+    private SerialLine line;
+    private LineStore store;
+    private long elapsedMillis;
+    private long elapsedNanos;
+    private final StringBuilder timeText = new StringBuilder();
+
+    @Setup
+    public void createLine() {
+        store = new LineStore();
+        long start = System.nanoTime();
+        store.startLine(start);
+        line = new SerialLine(store, 0, start);
+        int fragmentLength = Math.max(1, lineLength / fragments);
+        byte[] data = new byte[fragmentLength];
+        for (int i = 0; i < fragments; i++) {
+            for (int j = 0; j < fragmentLength; j++) {
+                data[j] = (byte) ('a' + (i + j) % 26);
+            }
+            store.append(data, 0, data.length);
+        }
+        elapsedMillis = 3_723_456L;
+        elapsedNanos = 3_723_456_789_012L;
+    }
+
+    @Benchmark
+    public String serialLineText() {
+        return line.getLineText();
+    }
+
+    @Benchmark
+    public String lineStoreText() {
+        return store.getLineText(0);
+    }
+
+    @Benchmark
+    public String formatTime() {
+        return SerialMessage.formatTime(elapsedMillis++);
+    }
+
+    @Benchmark
+    public StringBuilder appendElapsed() {
+        timeText.setLength(0);
+        return SerialMessage.appendElapsed(timeText, elapsedNanos += 1_001);
+    }
+}
@@ -0,0 +1,52 @@
+package com.jacobwigent.wiretap.benchmark;
+
+import com.jacobwigent.wiretap.serial.MessageHandler;
+import com.jacobwigent.wiretap.serial.PortSession;
+import com.jacobwigent.wiretap.serial.SyntheticBackend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Headless soak run: a synthetic port drives PortSession -> ring buffer -> MessageHandler for a fixed time
+    and the sustained rate, line count and dropped chunks are printed once per second.
+
+        java -cp benchmarks/target/benchmarks.jar com.jacobwigent.wiretap.benchmark.PipelineSoak [port] [baud] [seconds]
+
+    port is any SIM: name (default SIM:MAX); a non-zero exit status means chunks were dropped.
+ */
+public class PipelineSoak {
+
+    public static void main(String[] args) throws Exception {
+        String portName = args.length > 0 ? args[0] : "SIM:MAX";
+        int baud = args.length > 1 ? Integer.parseInt(args[1]) : 921600;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        SyntheticBackend backend = SyntheticBackend.forName(portName);
+        backend.setBaudRate(baud);
+        PortSession session = new PortSession(backend);
+        Path captureRoot = Files.createTempDirectory("wiretap-soak");
+        MessageHandler handler = new MessageHandler(session, () -> {}, captureRoot);
+
+        if (!session.open()) {
+            System.err.println("Could not open " + portName);
+            System.exit(2);
+        }
+        long lastBytes = 0;
+        for (int i = 1; i <= seconds; i++) {
+            TimeUnit.SECONDS.sleep(1);
+            long bytes = session.getBytesRead();
+            System.out.printf("%3ds  %,12d B/s  %,12d lines  %,8d chunks dropped%n",
+                    i, bytes - lastBytes, handler.getLineCount(), session.getDroppedChunkCount());
+            lastBytes = bytes;
+        }
+        long dropped = session.getDroppedChunkCount();
+        session.dispose();
+        handler.getStore().setKeep(true);
+        handler.close();
+
+        System.out.println("Capture written to " + handler.getStore().getDirectory());
+        System.exit(dropped == 0 ? 0 : 1);
+    }
+}
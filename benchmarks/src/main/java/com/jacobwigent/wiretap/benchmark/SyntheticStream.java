@@ -0,0 +1,53 @@
+package com.jacobwigent.wiretap.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Pre-generated serial traffic: printable lines of a fixed length, cut into fixed-size reads
+public final class SyntheticStream {
+
+    public enum Newline {
+        LF("\n"), CRLF("\r\n"), CR("\r");
+
+        final byte[] bytes;
+
+        Newline(String sequence) {
+            this.bytes = sequence.getBytes();
+        }
+    }
+
+    private static final int STREAM_SIZE = 4 << 20;
+
+    private final ByteBuffer[] chunks;
+    private int next = 0;
+
+    SyntheticStream(int chunkSize, int lineLength, Newline newline) {
+        byte[] data = new byte[STREAM_SIZE];
+        Random random = new Random(42);
+        int column = 0;
+        for (int i = 0; i < data.length; ) {
+            if (column == lineLength) {
+                for (int j = 0; j < newline.bytes.length && i < data.length; j++) {
+                    data[i++] = newline.bytes[j];
+                }
+                column = 0;
+            } else {
+                data[i++] = (byte) (' ' + random.nextInt(95));
+                column++;
+            }
+        }
+
+        chunks = new ByteBuffer[data.length / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.wrap(data, i * chunkSize, chunkSize).slice();
+        }
+    }
+
+    // Next read, rewound so it can be consumed again
+    ByteBuffer next() {
+        ByteBuffer chunk = chunks[next];
+        next = next + 1 == chunks.length ? 0 : next + 1;
+        chunk.clear();
+        return chunk;
+    }
+}
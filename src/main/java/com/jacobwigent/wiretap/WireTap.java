@@ -1,5 +1,6 @@
 package com.jacobwigent.wiretap;
 
+import com.jacobwigent.wiretap.display.MainController;
 import com.jacobwigent.wiretap.serial.SerialService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -16,10 +17,13 @@ public class WireTap extends Application {
     private static final int MIN_WIDTH = 680;
     private static final int MIN_HEIGHT = 420;
 
+    private MainController controller;
+
     @Override
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(WireTap.class.getResource("main-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), MIN_WIDTH, MIN_HEIGHT);
+        controller = fxmlLoader.getController();
         stage.setMinWidth(MIN_WIDTH);
         stage.setMinHeight(MIN_HEIGHT);
         //stage.setMaximized(true);
@@ -31,6 +35,9 @@ public class WireTap extends Application {
 
     @Override
     public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
         SerialService.kill();
     }
 
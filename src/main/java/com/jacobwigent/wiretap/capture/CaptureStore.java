@@ -0,0 +1,393 @@
+package com.jacobwigent.wiretap.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+    Append-only capture of raw serial chunks, backed by memory-mapped segment files.
+    Chunk bytes go to data segments and every chunk gets a fixed-size (elapsed-nanos, offset, length) index entry,
+    so the heap only holds the segment mappings no matter how long the session runs. Because the pages belong to
+    the files, a capture that was cut short by a crash can be reopened with open().
+
+    One thread appends; any number of threads may read chunks below getChunkCount().
+
+    Captures live under getDefaultRoot() (-Dwiretap.captureRoot, default tmpdir/wiretap) and are deleted on close()
+    unless kept with setKeep() or -Dwiretap.keepCaptures=true.
+ */
+public class CaptureStore implements AutoCloseable {
+
+    public static final int DATA_SEGMENT_SIZE = 64 << 20;
+    public static final int INDEX_ENTRY_SIZE = 24;
+    public static final int INDEX_SEGMENT_ENTRIES = 1 << 20;
+
+    private static final String START_TIME_FILE = "start-time";
+    private static final DateTimeFormatter DIRECTORY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path directory;
+    private final long startEpochMillis;
+    private final long startNanos;
+
+    private volatile MappedByteBuffer[] dataSegments = new MappedByteBuffer[0];
+    private volatile MappedByteBuffer[] indexSegments = new MappedByteBuffer[0];
+    private volatile int chunkCount = 0;
+    // Chunks never straddle data segments, so the captured byte stream has gaps at segment ends.
+    // streamStarts[s] is the stream position of the first byte in data segment s.
+    private volatile long[] streamStarts = new long[0];
+    private volatile long streamLength = 0;
+    private volatile boolean keep = Boolean.getBoolean("wiretap.keepCaptures");
+    private volatile boolean closed = false;
+
+    // Writer-only state
+    private long writeOffset = 0;
+    private ByteBuffer dataWriter;
+
+    private CaptureStore(Path directory, long startEpochMillis) {
+        this.directory = directory;
+        this.startEpochMillis = startEpochMillis;
+        this.startNanos = System.nanoTime() - (System.currentTimeMillis() - startEpochMillis) * 1_000_000L;
+    }
+
+    public static Path getDefaultRoot() {
+        String root = System.getProperty("wiretap.captureRoot");
+        return root != null ? Paths.get(root) : Paths.get(System.getProperty("java.io.tmpdir"), "wiretap");
+    }
+
+    public static CaptureStore create(Path root) throws IOException {
+        Files.createDirectories(root);
+        // A fresh directory even for two stores created in the same millisecond under a shared root
+        Path directory = Files.createTempDirectory(root, "capture-" + LocalDateTime.now().format(DIRECTORY_FORMAT) + "-");
+        long start = System.currentTimeMillis();
+        Files.writeString(directory.resolve(START_TIME_FILE), Long.toString(start));
+        return new CaptureStore(directory, start);
+    }
+
+    // Reopens an existing capture, recovering every chunk whose index entry was completely written
+    public static CaptureStore open(Path directory) throws IOException {
+        long start = Long.parseLong(Files.readString(directory.resolve(START_TIME_FILE)).trim());
+        CaptureStore store = new CaptureStore(directory, start);
+        store.recover();
+        return store;
+    }
+
+    private void recover() throws IOException {
+        int count = 0;
+        for (int seg = 0; Files.exists(indexPath(seg)); seg++) {
+            MappedByteBuffer index = mapIndexSegment(seg);
+            for (int i = 0; i < INDEX_SEGMENT_ENTRIES; i++) {
+                if (index.getInt(i * INDEX_ENTRY_SIZE + 16) <= 0) {
+                    chunkCount = count;
+                    positionWriterAfterLastChunk();
+                    return;
+                }
+                count++;
+            }
+        }
+        chunkCount = count;
+        positionWriterAfterLastChunk();
+    }
+
+    private void positionWriterAfterLastChunk() throws IOException {
+        if (chunkCount == 0) { return; }
+        long[] starts = new long[0];
+        long stream = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int seg = (int) (getOffset(i) / DATA_SEGMENT_SIZE);
+            while (starts.length <= seg) {
+                starts = Arrays.copyOf(starts, starts.length + 1);
+                starts[starts.length - 1] = stream;
+            }
+            stream += getLength(i);
+        }
+        streamStarts = starts;
+        streamLength = stream;
+        int last = chunkCount - 1;
+        writeOffset = getOffset(last) + getLength(last);
+        int seg = (int) (writeOffset / DATA_SEGMENT_SIZE);
+        while (dataSegments.length <= seg) {
+            mapDataSegment(dataSegments.length);
+        }
+        dataWriter = dataSegments[seg].duplicate();
+    }
+
+    public void append(long elapsedNanos, ByteBuffer chunk) {
+        int length = chunk.remaining();
+        if (length == 0 || closed) { return; }
+        if (length > DATA_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Chunk larger than a capture segment");
+        }
+        try {
+            int segment = (int) (writeOffset / DATA_SEGMENT_SIZE);
+            int position = (int) (writeOffset % DATA_SEGMENT_SIZE);
+            if (position + length > DATA_SEGMENT_SIZE) {
+                segment++;
+                position = 0;
+                writeOffset = (long) segment * DATA_SEGMENT_SIZE;
+            }
+            if (segment >= dataSegments.length) {
+                mapDataSegment(segment);
+            }
+            if (segment >= streamStarts.length) {
+                long[] starts = Arrays.copyOf(streamStarts, segment + 1);
+                for (int s = streamStarts.length; s <= segment; s++) {
+                    starts[s] = streamLength;
+                }
+                streamStarts = starts;
+            }
+            if (dataWriter == null || position == 0) {
+                dataWriter = dataSegments[segment].duplicate();
+            }
+            dataWriter.position(position);
+            dataWriter.put(chunk);
+
+            int index = chunkCount;
+            int indexSegment = index / INDEX_SEGMENT_ENTRIES;
+            if (indexSegment >= indexSegments.length) {
+                mapIndexSegment(indexSegment);
+            }
+            int entry = (index % INDEX_SEGMENT_ENTRIES) * INDEX_ENTRY_SIZE;
+            MappedByteBuffer indexBuffer = indexSegments[indexSegment];
+            indexBuffer.putLong(entry, elapsedNanos);
+            indexBuffer.putLong(entry + 8, writeOffset);
+            // Length goes last: a non-zero length marks the entry as complete for recovery
+            indexBuffer.putInt(entry + 16, length);
+
+            writeOffset += length;
+            chunkCount = index + 1;
+            streamLength += length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void append(long elapsedNanos, byte[] data, int offset, int length) {
+        append(elapsedNanos, ByteBuffer.wrap(data, offset, length));
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getElapsedNanos(int chunk) {
+        return entry(chunk).getLong(entryPosition(chunk));
+    }
+
+    public long getOffset(int chunk) {
+        return entry(chunk).getLong(entryPosition(chunk) + 8);
+    }
+
+    public int getLength(int chunk) {
+        return entry(chunk).getInt(entryPosition(chunk) + 16);
+    }
+
+    public long getByteCount() {
+        int count = chunkCount;
+        if (count == 0) { return 0; }
+        return getOffset(count - 1) + getLength(count - 1);
+    }
+
+    // Total bytes captured, i.e. the length of the byte stream the chunks form back to back
+    public long getStreamLength() {
+        return streamLength;
+    }
+
+    /*
+        Copies up to length bytes of the captured stream, starting at stream position position, without
+        allocating. Returns the number of bytes copied, which is less than length only at the end of the stream.
+     */
+    public int readStream(long position, byte[] destination, int offset, int length) {
+        long end = Math.min(streamLength, position + length);
+        if (position >= end) { return 0; }
+        long[] starts = streamStarts;
+        MappedByteBuffer[] segments = dataSegments;
+        int copied = 0;
+        int segment = segmentAt(starts, position);
+        while (position < end) {
+            long segmentEnd = segment + 1 < starts.length ? starts[segment + 1] : end;
+            int index = (int) (position - starts[segment]);
+            int n = (int) (Math.min(end, segmentEnd) - position);
+            MappedByteBuffer data = segments[segment];
+            for (int i = 0; i < n; i++) {
+                destination[offset + copied + i] = data.get(index + i);
+            }
+            copied += n;
+            position += n;
+            segment++;
+        }
+        return copied;
+    }
+
+    // Index of the chunk that holds the given stream position
+    public int getChunkAtStreamPosition(long position) {
+        long[] starts = streamStarts;
+        int segment = segmentAt(starts, position);
+        long offset = (long) segment * DATA_SEGMENT_SIZE + (position - starts[segment]);
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getOffset(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int segmentAt(long[] starts, long position) {
+        int segment = 0;
+        while (segment + 1 < starts.length && starts[segment + 1] <= position) {
+            segment++;
+        }
+        return segment;
+    }
+
+    // Returns a read-only view of the chunk's bytes, positioned at its start
+    public ByteBuffer getChunk(int chunk) {
+        long offset = getOffset(chunk);
+        int length = getLength(chunk);
+        ByteBuffer view = dataSegments[(int) (offset / DATA_SEGMENT_SIZE)].asReadOnlyBuffer();
+        int position = (int) (offset % DATA_SEGMENT_SIZE);
+        view.limit(position + length).position(position);
+        return view;
+    }
+
+    public byte[] getChunkBytes(int chunk) {
+        ByteBuffer view = getChunk(chunk);
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    // Converts a System.nanoTime() reading into this capture's elapsed-nanos timeline
+    public long toElapsedNanos(long nanoTime) {
+        return nanoTime - startNanos;
+    }
+
+    public long toNanoTime(long elapsedNanos) {
+        return elapsedNanos + startNanos;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // A kept capture stays on disk after close() and can be reopened with open()
+    public void setKeep(boolean keep) {
+        this.keep = keep;
+    }
+
+    public boolean isKept() {
+        return keep;
+    }
+
+    public void flush() {
+        for (MappedByteBuffer segment : dataSegments) {
+            segment.force();
+        }
+        for (MappedByteBuffer segment : indexSegments) {
+            segment.force();
+        }
+    }
+
+    /*
+        Drops the segment mappings (the pages are unmapped once the buffers are collected) and deletes the
+        directory unless the capture is kept. The store reads as empty afterwards and ignores further appends.
+     */
+    @Override
+    public void close() {
+        if (closed) { return; }
+        closed = true;
+        if (keep) {
+            flush();
+        }
+        chunkCount = 0;
+        streamLength = 0;
+        streamStarts = new long[0];
+        dataSegments = new MappedByteBuffer[0];
+        indexSegments = new MappedByteBuffer[0];
+        dataWriter = null;
+        if (!keep) {
+            deleteDirectory();
+        }
+    }
+
+    // Files that can't be deleted yet (still mapped, on Windows) are left for the JVM to remove on exit
+    private void deleteDirectory() {
+        List<Path> pending = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    pending.add(file);
+                }
+            });
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            // deleteOnExit runs in reverse order, so the directory goes after its files
+            directory.toFile().deleteOnExit();
+            for (Path file : pending) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private MappedByteBuffer entry(int chunk) {
+        if (chunk < 0 || chunk >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + chunk + " of " + chunkCount);
+        }
+        return indexSegments[chunk / INDEX_SEGMENT_ENTRIES];
+    }
+
+    private static int entryPosition(int chunk) {
+        return (chunk % INDEX_SEGMENT_ENTRIES) * INDEX_ENTRY_SIZE;
+    }
+
+    private Path dataPath(int segment) {
+        return directory.resolve(String.format("data-%05d.bin", segment));
+    }
+
+    private Path indexPath(int segment) {
+        return directory.resolve(String.format("index-%05d.bin", segment));
+    }
+
+    private void mapDataSegment(int segment) throws IOException {
+        MappedByteBuffer mapped = map(dataPath(segment), DATA_SEGMENT_SIZE);
+        MappedByteBuffer[] grown = Arrays.copyOf(dataSegments, segment + 1);
+        grown[segment] = mapped;
+        dataSegments = grown;
+    }
+
+    private MappedByteBuffer mapIndexSegment(int segment) throws IOException {
+        MappedByteBuffer mapped = map(indexPath(segment), (long) INDEX_SEGMENT_ENTRIES * INDEX_ENTRY_SIZE);
+        MappedByteBuffer[] grown = Arrays.copyOf(indexSegments, segment + 1);
+        grown[segment] = mapped;
+        indexSegments = grown;
+        return mapped;
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
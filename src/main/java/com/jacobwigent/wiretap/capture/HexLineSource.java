@@ -0,0 +1,102 @@
+package com.jacobwigent.wiretap.capture;
+
+import com.jacobwigent.wiretap.serial.LineSource;
+
+/*
+    Hex dump of a capture's raw byte stream, 16 bytes per row:
+
+        00000040  48 65 6c 6c 6f 2c 20 77  6f 72 6c 64 0d 0a 00 ff  |Hello, world....|
+
+    Rows are formatted from the mapped capture only when the monitor asks for them, so only the visible rows
+    are ever decoded. The ASCII column is optional. Meant for the FX thread.
+ */
+public class HexLineSource implements LineSource {
+
+    public static final int BYTES_PER_ROW = 16;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int OFFSET_DIGITS = 8;
+    // Offset, two spaces, 16 x "xx " plus the extra space between the two halves
+    private static final int HEX_WIDTH = OFFSET_DIGITS + 2 + BYTES_PER_ROW * 3 + 1;
+    private static final int ASCII_WIDTH = 2 + BYTES_PER_ROW + 1;
+
+    private final CaptureStore store;
+    private final boolean showAscii;
+    private final byte[] row = new byte[BYTES_PER_ROW];
+    private final char[] text;
+
+    public HexLineSource(CaptureStore store, boolean showAscii) {
+        this.store = store;
+        this.showAscii = showAscii;
+        this.text = new char[HEX_WIDTH + (showAscii ? ASCII_WIDTH : 0)];
+    }
+
+    public CaptureStore getStore() {
+        return store;
+    }
+
+    @Override
+    public int getLineCount() {
+        return (int) ((store.getStreamLength() + BYTES_PER_ROW - 1) / BYTES_PER_ROW);
+    }
+
+    @Override
+    public int getLineLength(int line) {
+        return text.length;
+    }
+
+    // Read time of the chunk holding the row's first byte
+    @Override
+    public long getLineTime(int line) {
+        int chunk = store.getChunkAtStreamPosition((long) line * BYTES_PER_ROW);
+        return store.toNanoTime(store.getElapsedNanos(chunk));
+    }
+
+    @Override
+    public String getLineText(int line, int fromColumn, int maxChars) {
+        int length = format(line);
+        if (fromColumn >= length) { return ""; }
+        return new String(text, fromColumn, Math.min(length - fromColumn, maxChars));
+    }
+
+    @Override
+    public void appendLineText(int line, StringBuilder sb) {
+        sb.append(text, 0, format(line));
+    }
+
+    // Formats the row into text and returns its length
+    private int format(int line) {
+        long position = (long) line * BYTES_PER_ROW;
+        int count = store.readStream(position, row, 0, BYTES_PER_ROW);
+
+        int c = 0;
+        for (int shift = (OFFSET_DIGITS - 1) * 4; shift >= 0; shift -= 4) {
+            text[c++] = HEX_DIGITS[(int) (position >>> shift) & 0xf];
+        }
+        text[c++] = ' ';
+        text[c++] = ' ';
+        for (int i = 0; i < BYTES_PER_ROW; i++) {
+            if (i == BYTES_PER_ROW / 2) {
+                text[c++] = ' ';
+            }
+            if (i < count) {
+                text[c++] = HEX_DIGITS[(row[i] >> 4) & 0xf];
+                text[c++] = HEX_DIGITS[row[i] & 0xf];
+            } else {
+                text[c++] = ' ';
+                text[c++] = ' ';
+            }
+            text[c++] = ' ';
+        }
+        if (showAscii) {
+            text[c++] = ' ';
+            text[c++] = '|';
+            for (int i = 0; i < count; i++) {
+                int b = row[i] & 0xff;
+                text[c++] = b >= 0x20 && b < 0x7f ? (char) b : '.';
+            }
+            text[c++] = '|';
+        }
+        return c;
+    }
+}
@@ -0,0 +1,102 @@
+package com.jacobwigent.wiretap.capture;
+
+import com.jacobwigent.wiretap.serial.LineStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Spill target for lines evicted from a LineStore: appends their text, one per line, to a UTF-8 file.
+    Lines are encoded into a reused buffer and written in large blocks on the appending thread.
+ */
+public class LineArchive implements LineStore.EvictionListener, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+
+    private long archivedLines = 0;
+    private boolean closed = false;
+
+    public LineArchive(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void onEvict(LineStore lines, int index) {
+        // The port may still deliver a few chunks while the application shuts down
+        if (closed) { return; }
+        line.setLength(0);
+        lines.appendLineText(index, line);
+        line.append('\n');
+        try {
+            CharBuffer chars = CharBuffer.wrap(line);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        archivedLines++;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public synchronized void flush() {
+        if (closed) { return; }
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) { return; }
+        closed = true;
+        try {
+            drain();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getArchivedLines() {
+        return archivedLines;
+    }
+}
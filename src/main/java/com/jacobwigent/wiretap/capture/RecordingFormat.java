@@ -0,0 +1,50 @@
+package com.jacobwigent.wiretap.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+    Layout of a .wtap recording:
+        header:  8-byte magic, start time (epoch millis), baud rate, reserved int   (HEADER_SIZE bytes)
+        records: elapsed nanos since the recording started (long), length (int), then that many raw bytes
+    All values are big-endian. Rolled files of one recording share the start time, so their elapsed times
+    continue from one file to the next.
+ */
+public final class RecordingFormat {
+
+    public static final String EXTENSION = ".wtap";
+    public static final int HEADER_SIZE = 24;
+    public static final int RECORD_HEADER_SIZE = 12;
+
+    private static final byte[] MAGIC = "WIRETAP1".getBytes(StandardCharsets.US_ASCII);
+
+    private RecordingFormat() {}
+
+    public static void writeHeader(ByteBuffer buffer, long startEpochMillis, int baudRate) {
+        buffer.put(MAGIC);
+        buffer.putLong(startEpochMillis);
+        buffer.putInt(baudRate);
+        buffer.putInt(0);
+    }
+
+    // Validates the magic and returns the recording's start time; leaves the buffer at the first record
+    public static long readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Not a WireTap recording: file too short");
+        }
+        for (byte b : MAGIC) {
+            if (buffer.get() != b) {
+                throw new IOException("Not a WireTap recording: bad magic");
+            }
+        }
+        long startEpochMillis = buffer.getLong();
+        buffer.getInt();
+        buffer.getInt();
+        return startEpochMillis;
+    }
+
+    public static int readBaudRate(ByteBuffer buffer) {
+        return buffer.getInt(MAGIC.length + 8);
+    }
+}
@@ -0,0 +1,284 @@
+package com.jacobwigent.wiretap.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Sequential reader over a .wtap recording, including the files it was rolled into.
+    Files are memory-mapped a window at a time, so recordings of any size are read without copying them
+    through the heap, and a record's bytes are handed out as a slice of the mapping.
+
+    Seeking by time goes through a sparse index: every INDEX_INTERVAL bytes of recording, the position and
+    elapsed time of the record there is remembered in primitive arrays. The index grows as the recording is
+    read or scanned, so opening is instant and a seek only ever hops record headers from the nearest entry.
+    Not thread-safe.
+ */
+public class RecordingReader implements AutoCloseable {
+
+    public static final int WINDOW_SIZE = 64 << 20;
+    public static final int INDEX_INTERVAL = 1 << 20;
+
+    private final List<Path> files;
+    private final FileChannel[] channels;
+    private final long[] fileSizes;
+    private final long startEpochMillis;
+    private final int baudRate;
+
+    // Sparse index: elapsed time, file and offset of a record roughly every INDEX_INTERVAL bytes
+    private long[] indexTimes = new long[256];
+    private int[] indexFiles = new int[256];
+    private long[] indexOffsets = new long[256];
+    private int indexSize = 0;
+    private long indexedUpTo = -1;
+
+    // Current mapping window
+    private int windowFile = -1;
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    // Current record; offset is where the next record starts
+    private int file = 0;
+    private long offset = RecordingFormat.HEADER_SIZE;
+    private long recordElapsed = -1;
+    private int recordLength = 0;
+    private long recordDataOffset;
+
+    private RecordingReader(List<Path> files) throws IOException {
+        this.files = files;
+        this.channels = new FileChannel[files.size()];
+        this.fileSizes = new long[files.size()];
+        long start = 0;
+        int baud = 0;
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                channels[i] = FileChannel.open(files.get(i), StandardOpenOption.READ);
+                fileSizes[i] = channels[i].size();
+                ByteBuffer header = ByteBuffer.allocate(RecordingFormat.HEADER_SIZE);
+                while (header.hasRemaining() && channels[i].read(header, header.position()) > 0) {}
+                header.flip();
+                long fileStart = RecordingFormat.readHeader(header);
+                if (i == 0) {
+                    start = fileStart;
+                    baud = RecordingFormat.readBaudRate(header);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.startEpochMillis = start;
+        this.baudRate = baud;
+    }
+
+    // Opens the given file and any later files rolled from the same recording in its directory
+    public static RecordingReader open(Path file) throws IOException {
+        return new RecordingReader(findRolledFiles(file));
+    }
+
+    private static List<Path> findRolledFiles(Path file) throws IOException {
+        long start = readStart(file);
+        Path directory = file.toAbsolutePath().getParent();
+        List<Path> siblings = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + RecordingFormat.EXTENSION)) {
+            for (Path sibling : stream) {
+                siblings.add(sibling);
+            }
+        }
+        Collections.sort(siblings);
+        List<Path> files = new ArrayList<>();
+        String first = file.getFileName().toString();
+        for (Path sibling : siblings) {
+            if (sibling.getFileName().toString().compareTo(first) < 0) { continue; }
+            try {
+                if (readStart(sibling) == start) {
+                    files.add(sibling);
+                }
+            } catch (IOException e) {
+                // Not a recording, or an unreadable one; it isn't part of this recording either way
+            }
+        }
+        return files;
+    }
+
+    private static long readStart(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(RecordingFormat.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) > 0) {}
+            header.flip();
+            return RecordingFormat.readHeader(header);
+        }
+    }
+
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (long size : fileSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /*
+        Moves to the next record; false at the end of the recording. A record cut short by a crash ends the
+        file it is in.
+     */
+    public boolean next() {
+        while (file < channels.length) {
+            if (offset + RecordingFormat.RECORD_HEADER_SIZE <= fileSizes[file]) {
+                ByteBuffer buffer = map(file, offset, RecordingFormat.RECORD_HEADER_SIZE);
+                int position = (int) (offset - windowStart);
+                long elapsed = buffer.getLong(position);
+                int length = buffer.getInt(position + 8);
+                long dataOffset = offset + RecordingFormat.RECORD_HEADER_SIZE;
+                if (length >= 0 && dataOffset + length <= fileSizes[file]) {
+                    indexRecord(file, offset, elapsed);
+                    recordElapsed = elapsed;
+                    recordLength = length;
+                    recordDataOffset = dataOffset;
+                    offset = dataOffset + length;
+                    return true;
+                }
+            }
+            file++;
+            offset = RecordingFormat.HEADER_SIZE;
+        }
+        recordElapsed = -1;
+        recordLength = 0;
+        return false;
+    }
+
+    // Elapsed nanoseconds since the recording started at which the current record was read
+    public long getElapsedNanos() {
+        return recordElapsed;
+    }
+
+    public int getLength() {
+        return recordLength;
+    }
+
+    // The current record's bytes, valid until the next call on this reader
+    public ByteBuffer getData() {
+        ByteBuffer buffer = map(file, recordDataOffset, recordLength).duplicate();
+        int position = (int) (recordDataOffset - windowStart);
+        buffer.limit(position + recordLength).position(position);
+        return buffer;
+    }
+
+    /*
+        Positions the reader so the next call to next() returns the first record read at or after the given
+        elapsed time. Starts from the closest index entry and indexes whatever it scans on the way.
+     */
+    public void seek(long elapsedNanos) {
+        int entry = floorIndex(elapsedNanos);
+        if (entry < 0) {
+            file = 0;
+            offset = RecordingFormat.HEADER_SIZE;
+        } else {
+            file = indexFiles[entry];
+            offset = indexOffsets[entry];
+        }
+        while (true) {
+            int recordFile = file;
+            long recordOffset = offset;
+            if (!next()) { return; }
+            if (recordElapsed >= elapsedNanos) {
+                file = recordFile;
+                offset = recordOffset;
+                recordElapsed = -1;
+                recordLength = 0;
+                return;
+            }
+        }
+    }
+
+    // Last index entry at or before the given time, or -1
+    private int floorIndex(long elapsedNanos) {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] <= elapsedNanos) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void indexRecord(int recordFile, long recordOffset, long elapsed) {
+        long position = globalPosition(recordFile, recordOffset);
+        if (position <= indexedUpTo || (indexSize > 0 && position - indexedUpTo < INDEX_INTERVAL)) { return; }
+        if (indexSize == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+            indexFiles = Arrays.copyOf(indexFiles, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexTimes[indexSize] = elapsed;
+        indexFiles[indexSize] = recordFile;
+        indexOffsets[indexSize] = recordOffset;
+        indexSize++;
+        indexedUpTo = position;
+    }
+
+    // Position across all files, which orders records the same way as (file, offset)
+    private long globalPosition(int recordFile, long recordOffset) {
+        long position = recordOffset;
+        for (int i = 0; i < recordFile; i++) {
+            position += fileSizes[i];
+        }
+        return position;
+    }
+
+    // Mapping that covers [position, position + length) of the given file
+    private MappedByteBuffer map(int mapFile, long position, int length) {
+        if (mapFile != windowFile || position < windowStart || position + length > windowStart + window.capacity()) {
+            long size = Math.min(Math.max(WINDOW_SIZE, length), fileSizes[mapFile] - position);
+            try {
+                window = channels[mapFile].map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            windowFile = mapFile;
+            windowStart = position;
+        }
+        return window;
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        for (FileChannel channel : channels) {
+            if (channel == null) { continue; }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.jacobwigent.wiretap.capture;
+
+import com.jacobwigent.wiretap.serial.SerialByteListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Streams raw chunks and their timestamps to .wtap files on disk.
+    Chunks are copied into one of two direct buffers on the listener's own dispatcher thread; full (or stale)
+    buffers are handed to a writer thread that owns the FileChannel, rolls files and applies the fsync policy.
+    Disk latency therefore never reaches the port reader or the FX thread.
+ */
+public class SessionRecorder implements SerialByteListener, AutoCloseable {
+
+    public enum FsyncPolicy {
+        // Leave it to the OS
+        NEVER,
+        // Force each file to disk when it is rolled or closed
+        ON_ROLL,
+        // Force after every buffer write
+        EVERY_WRITE
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // How often a dispatcher waiting for a free buffer checks whether the writer is still alive
+    private static final long SWAP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final DateTimeFormatter FILE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path directory;
+    private final int baudRate;
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    private long maxFileBytes = 0;
+    private long maxFileNanos = 0;
+    private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.ON_ROLL;
+
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(2);
+    private final Object swapLock = new Object();
+    private ByteBuffer active;
+    private long activeSince;
+
+    private final Thread writer;
+    private volatile boolean running = false;
+    private volatile IOException failure;
+
+    // Writer-thread state
+    private FileChannel channel;
+    private Path currentFile;
+    private int fileIndex = 0;
+    private long fileBytes;
+    private long fileOpenedNanos;
+
+    private volatile long recordedBytes = 0;
+
+    public SessionRecorder(Path directory, int baudRate) {
+        this.directory = directory;
+        this.baudRate = baudRate;
+        active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        writer = new Thread(this::writeLoop, "recorder-" + directory.getFileName());
+        writer.setDaemon(true);
+    }
+
+    // Rolls to a new file once it would grow past maxBytes (0 = never)
+    public void setMaxFileBytes(long maxBytes) {
+        this.maxFileBytes = maxBytes;
+    }
+
+    // Rolls to a new file once it has been open this long (0 = never)
+    public void setMaxFileDuration(long duration, TimeUnit unit) {
+        this.maxFileNanos = unit.toNanos(duration);
+    }
+
+    // Longest time a chunk may sit in memory before it is handed to the writer
+    public void setFlushInterval(long interval, TimeUnit unit) {
+        this.flushIntervalNanos = unit.toNanos(interval);
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        openNextFile();
+        running = true;
+        activeSince = System.nanoTime();
+        writer.start();
+    }
+
+    @Override
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        if (!running) { return; }
+        long elapsed = timestampNanos - startNanos;
+        synchronized (swapLock) {
+            while (data.hasRemaining()) {
+                if (active.remaining() <= RecordingFormat.RECORD_HEADER_SIZE && !swap()) {
+                    return;
+                }
+                int length = Math.min(data.remaining(), active.remaining() - RecordingFormat.RECORD_HEADER_SIZE);
+                active.putLong(elapsed);
+                active.putInt(length);
+                int limit = data.limit();
+                data.limit(data.position() + length);
+                active.put(data);
+                data.limit(limit);
+            }
+            if (System.nanoTime() - activeSince > flushIntervalNanos) {
+                swap();
+            }
+        }
+    }
+
+    /*
+        Caller holds swapLock. Only blocks if the writer is a whole buffer behind, and returns false if no buffer
+        could be had. If the writer has died (a disk error), the recording stops instead: the buffered data is
+        dropped and later chunks are ignored, so the dispatcher never waits on a writer that will not come back.
+        close() reports the failure. Interrupts don't cut the wait short (removing the listener interrupts the
+        dispatcher mid-chunk); they are passed on once a buffer is free.
+     */
+    private boolean swap() {
+        if (active.position() == 0) { return true; }
+        ByteBuffer next = null;
+        boolean interrupted = false;
+        while (next == null) {
+            try {
+                next = free.poll(SWAP_WAIT_NANOS, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                continue;
+            }
+            if (next == null && (failure != null || !writer.isAlive())) {
+                running = false;
+                active.clear();
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (next == null) { return false; }
+        // Only two buffers exist, so with one taken from free there is always room in filled
+        active.flip();
+        filled.add(active);
+        active = next;
+        active.clear();
+        activeSince = System.nanoTime();
+        return true;
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !filled.isEmpty()) {
+                ByteBuffer buffer = filled.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (buffer == null) {
+                    // Nothing arrived for a while: push out whatever is sitting in the active buffer
+                    synchronized (swapLock) {
+                        if (System.nanoTime() - activeSince > flushIntervalNanos) {
+                            swap();
+                        }
+                    }
+                    continue;
+                }
+                write(buffer);
+                buffer.clear();
+                free.put(buffer);
+            }
+        } catch (IOException e) {
+            failure = e;
+            running = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        boolean sizeExceeded = maxFileBytes > 0 && fileBytes + buffer.remaining() > maxFileBytes
+                && fileBytes > RecordingFormat.HEADER_SIZE;
+        boolean timeExceeded = maxFileNanos > 0 && System.nanoTime() - fileOpenedNanos > maxFileNanos;
+        if (sizeExceeded || timeExceeded) {
+            closeFile();
+            openNextFile();
+        }
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        fileBytes += length;
+        recordedBytes += length;
+        if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+            channel.force(false);
+        }
+    }
+
+    private void openNextFile() throws IOException {
+        String name = "wiretap-" + LocalDateTime.now().format(FILE_FORMAT) + "-" + String.format("%03d", fileIndex++)
+                + RecordingFormat.EXTENSION;
+        currentFile = directory.resolve(name);
+        channel = FileChannel.open(currentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(RecordingFormat.HEADER_SIZE);
+        RecordingFormat.writeHeader(header, startEpochMillis, baudRate);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        fileBytes = RecordingFormat.HEADER_SIZE;
+        fileOpenedNanos = System.nanoTime();
+    }
+
+    private void closeFile() throws IOException {
+        if (channel == null) { return; }
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(true);
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Flushes everything recorded so far and closes the current file; throws if the writer failed on the way
+    @Override
+    public void close() {
+        if (writer.isAlive()) {
+            synchronized (swapLock) {
+                swap();
+                running = false;
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            closeFile();
+        } catch (IOException e) {
+            if (failure == null) {
+                throw new UncheckedIOException(e);
+            }
+            failure.addSuppressed(e);
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    // True once the writer has stopped on an I/O error; nothing further is recorded
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    @Override
+    public void onDisconnect() {}
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getCurrentFile() {
+        return currentFile;
+    }
+
+    public long getRecordedBytes() {
+        return recordedBytes;
+    }
+
+    public boolean isRecording() {
+        return running;
+    }
+}
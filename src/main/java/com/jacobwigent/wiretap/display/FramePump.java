@@ -0,0 +1,104 @@
+package com.jacobwigent.wiretap.display;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Applies UI updates once per pulse instead of once per serial read.
+    Background threads only mark a registered task dirty (or post a one-off runnable); on the next frame the
+    pump runs each dirty task once, however many times it was marked, and stops when the frame budget is spent.
+    Whatever does not fit stays pending for the following frame, so the FX event queue never grows with the
+    data rate.
+ */
+public class FramePump extends AnimationTimer {
+
+    public static final long DEFAULT_FRAME_BUDGET_MILLIS = 8;
+
+    public static class Task {
+        private final Runnable action;
+        private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+        private Task(Runnable action) {
+            this.action = action;
+        }
+
+        // Safe to call from any thread, any number of times per frame
+        public void markDirty() {
+            dirty.set(true);
+        }
+    }
+
+    private final List<Task> tasks = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> posted = new ConcurrentLinkedQueue<>();
+    private volatile long frameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("wiretap.frameBudgetMillis", DEFAULT_FRAME_BUDGET_MILLIS));
+    private int nextTask = 0;
+    // Frames that went over budget
+    private volatile long overruns = 0;
+
+    public Task register(Runnable action) {
+        Task task = new Task(action);
+        tasks.add(task);
+        return task;
+    }
+
+    public void unregister(Task task) {
+        tasks.remove(task);
+    }
+
+    public void post(Runnable runnable) {
+        posted.add(runnable);
+    }
+
+    public void setFrameBudgetMillis(long millis) {
+        this.frameBudgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public long getFrameBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(frameBudgetNanos);
+    }
+
+    public int getPendingCount() {
+        int pending = posted.size();
+        for (Task task : tasks) {
+            if (task.dirty.get()) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    public long getOverrunCount() {
+        return overruns;
+    }
+
+    @Override
+    public void handle(long now) {
+        long deadline = System.nanoTime() + frameBudgetNanos;
+
+        // Rotate the starting task so an expensive task can't starve the ones registered after it
+        int count = tasks.size();
+        for (int i = 0; i < count; i++) {
+            Task task = tasks.get((nextTask + i) % count);
+            if (task.dirty.getAndSet(false)) {
+                task.action.run();
+            }
+            if (System.nanoTime() > deadline) {
+                nextTask = (nextTask + i + 1) % count;
+                overruns++;
+                return;
+            }
+        }
+
+        Runnable runnable;
+        while (System.nanoTime() < deadline && (runnable = posted.poll()) != null) {
+            runnable.run();
+        }
+    }
+}
@@ -1,9 +1,30 @@
 package com.jacobwigent.wiretap.display;
 
 import com.jacobwigent.wiretap.WireTap;
+import com.jacobwigent.wiretap.capture.HexLineSource;
+import com.jacobwigent.wiretap.capture.RecordingFormat;
+import com.jacobwigent.wiretap.capture.SessionRecorder;
+import com.jacobwigent.wiretap.export.LineExporter;
+import com.jacobwigent.wiretap.metrics.PipelineMetrics;
+import com.jacobwigent.wiretap.metrics.ResponseLatency;
+import com.jacobwigent.wiretap.protocol.FrameDecoders;
+import com.jacobwigent.wiretap.script.ScriptRunner;
+import com.jacobwigent.wiretap.script.SendScript;
+import com.jacobwigent.wiretap.search.FilteredLineSource;
+import com.jacobwigent.wiretap.search.LineFilter;
+import com.jacobwigent.wiretap.search.SearchIndex;
+import com.jacobwigent.wiretap.search.SearchQuery;
+import com.jacobwigent.wiretap.search.SearchResult;
+import com.jacobwigent.wiretap.serial.LineStore;
+import com.jacobwigent.wiretap.serial.MergedLineSource;
 import com.jacobwigent.wiretap.serial.MessageHandler;
-import com.jacobwigent.wiretap.serial.SerialListener;
+import com.jacobwigent.wiretap.serial.PortSession;
+import com.jacobwigent.wiretap.serial.ReplayBackend;
+import com.jacobwigent.wiretap.serial.SerialByteListener;
 import com.jacobwigent.wiretap.serial.SerialMessage;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
@@ -13,31 +34,88 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import com.jacobwigent.wiretap.serial.SerialService;
 import javafx.scene.control.Button;
+import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 
-public class MainController implements SerialListener {
+public class MainController implements SerialByteListener {
 
     @FXML private Label serialStatistics;
     @FXML private ComboBox<String> portComboBox;
     @FXML private ComboBox<String> baudComboBox;
     @FXML private SerialMonitor serialMonitor;
+    @FXML private SerialPlotter serialPlotter;
+    @FXML private ChoiceBox<Integer> plotWindowBox;
     @FXML private Button connectButton;
     @FXML private Label connectionUpdateLabel;
     @FXML private Label connectionStatusLabel;
     @FXML private CheckBox freezeToggle;
     @FXML private CheckBox scrollToggle;
+    @FXML private ChoiceBox<String> viewModeBox;
+    @FXML private ChoiceBox<String> protocolBox;
+    @FXML private CheckMenuItem recordToggle;
+    @FXML private TextField filterField;
+    @FXML private TextField searchField;
+    @FXML private CheckBox regexToggle;
+    @FXML private CheckBox caseToggle;
+    @FXML private Label searchStatusLabel;
+    @FXML private TextField sendField;
+    @FXML private ChoiceBox<String> lineEndingBox;
+    @FXML private CheckBox hexSendToggle;
 
     private MessageHandler messageHandler;
+    private SessionRecorder recorder;
+    private SearchIndex searchIndex;
+    private FilteredLineSource filteredLines;
+    // Non-null while the monitor shows the raw bytes instead of text
+    private HexLineSource hexLines;
+    private final List<MessageHandler> additionalHandlers = new ArrayList<>();
+    private final FramePump framePump = new FramePump();
+    private FramePump.Task statsTask;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final StringBuilder statsText = new StringBuilder();
+    private Timeline statsTimer;
+    private LineExporter exporter;
+    private ScriptRunner scriptRunner;
+    private ResponseLatency responseLatency;
+    private String lastLatencyPattern = "";
+
+    private static final long RECORDING_FILE_BYTES = 512L << 20;
+    private static final int MAX_SEARCH_HITS = 100_000;
+    private static final long STATS_INTERVAL_MILLIS = Long.getLong("wiretap.statsIntervalMillis", 500);
+    private static final String VIEW_TEXT = "Text";
+    private static final String VIEW_HEX = "Hex";
+    private static final String VIEW_MIXED = "Hex + ASCII";
+    private static final String REPLAY_ORIGINAL = "Original timing";
+    private static final String REPLAY_FAST = "10x";
+    private static final String REPLAY_MAX = "As fast as possible";
+    private static final String[] LINE_ENDING_NAMES = {"No line ending", "LF", "CR", "CR+LF"};
+    private static final String[] LINE_ENDINGS = {"", "\n", "\r", "\r\n"};
 
     private boolean connected = false;
     private String selectedPort = null;
@@ -51,10 +129,28 @@ public class MainController implements SerialListener {
      */
     @FXML
     public void initialize() {
+        serialMonitor.setFramePump(framePump);
+        statsTask = framePump.register(this::updateSerialStats);
+        framePump.start();
         messageHandler = new MessageHandler(serialMonitor);
+        filteredLines = new FilteredLineSource(messageHandler.getLines());
+        serialMonitor.setLineSource(filteredLines);
+        searchIndex = new SearchIndex(messageHandler.getLines());
+        searchIndex.start();
+        serialPlotter.setFramePump(framePump);
+        serialPlotter.setLineSource(messageHandler.getLines());
+        plotWindowBox.getItems().addAll(5, 10, 30, 60, 300);
+        plotWindowBox.setValue(10);
+        viewModeBox.getItems().addAll(VIEW_TEXT, VIEW_HEX, VIEW_MIXED);
+        viewModeBox.setValue(VIEW_TEXT);
+        protocolBox.getItems().addAll(FrameDecoders.getNames());
+        protocolBox.setValue(FrameDecoders.TEXT_LINES);
+        lineEndingBox.getItems().addAll(LINE_ENDING_NAMES);
+        lineEndingBox.setValue(LINE_ENDING_NAMES[1]);
+        startMetrics();
         loadAvailablePorts();
         loadBaudRates();
-        SerialService.addListener(this);
+        SerialService.addByteListener(this);
     }
 
     @FXML
@@ -135,7 +231,7 @@ public class MainController implements SerialListener {
                 successful = SerialService.tryConnect();
                 connected = successful;
                 messageHandler.reset();
-                javafx.application.Platform.runLater(this::updateSerialStats);
+                statsTask.markDirty();
             }
 
             // Update UI back on the JavaFX thread
@@ -163,8 +259,9 @@ public class MainController implements SerialListener {
     }
 
     @Override
-    public void onSerialData(SerialMessage msg) {
-        javafx.application.Platform.runLater(this::updateSerialStats);
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        metrics.markReceived(timestampNanos);
+        serialPlotter.requestRefresh();
     }
 
     @Override
@@ -182,17 +279,91 @@ public class MainController implements SerialListener {
         serialMonitor.clear();
     }
 
+    // Seconds of history the plotter shows
+    @FXML
+    public void updatePlotWindow() {
+        serialPlotter.setWindow(plotWindowBox.getValue(), TimeUnit.SECONDS);
+    }
+
+    @FXML
+    public void clearPlot() {
+        serialPlotter.clear();
+    }
+
+    /*
+        The stats panel refreshes at a fixed rate (-Dwiretap.statsIntervalMillis) instead of per chunk; each
+        tick also closes a metrics interval. The metrics are published over JMX as well.
+     */
+    private void startMetrics() {
+        metrics.setFxQueueDepth(framePump::getPendingCount);
+        metrics.setFrameOverruns(framePump::getOverrunCount);
+        metrics.setCaptureHeap(() -> {
+            long bytes = messageHandler.getLines().getMemoryUsage();
+            for (MessageHandler handler : additionalHandlers) {
+                bytes += handler.getLines().getMemoryUsage();
+            }
+            return bytes;
+        });
+        metrics.register();
+        serialMonitor.setOnRefresh(metrics::markDisplayed);
+        statsTimer = new Timeline(new KeyFrame(Duration.millis(STATS_INTERVAL_MILLIS), event -> {
+            metrics.sample();
+            statsTask.markDirty();
+            // A recorder whose writer hit a disk error has stopped recording; detach it and say so
+            if (recorder != null && recorder.isFailed()) {
+                stopRecording();
+            }
+        }));
+        statsTimer.setCycleCount(Animation.INDEFINITE);
+        statsTimer.play();
+    }
+
     private void updateSerialStats() {
-        String text =
-                "Message Count: " + messageHandler.getAccessibleMessageCount() + "\n" +
-                "Line Count: " + messageHandler.getLineCount() + "\n" +
-                "Connection Time: " + SerialMessage.formatTime(SerialService.getElapsedConnectionTime()) + "\n";
-        serialStatistics.setText(text);
+        StringBuilder sb = statsText;
+        sb.setLength(0);
+        sb.append("Message Count: ").append(messageHandler.getAccessibleMessageCount()).append('\n');
+        sb.append("Line Count: ").append(messageHandler.getLineCount()).append('\n');
+        sb.append("Connection Time: ");
+        SerialMessage.appendElapsed(sb, SerialService.getElapsedConnectionNanos()).append('\n');
+        metrics.appendSummary(sb);
+        if (responseLatency != null) {
+            responseLatency.appendSummary(sb);
+        }
+        serialStatistics.setText(sb.toString());
     }
 
     @FXML
     public void updateFreeze() {
-        messageHandler.setFreeze(freezeToggle.isSelected());
+        boolean frozen = freezeToggle.isSelected();
+        messageHandler.setFreeze(frozen);
+        for (MessageHandler handler : additionalHandlers) {
+            handler.setFreeze(frozen);
+        }
+        serialMonitor.setFrozen(frozen);
+        serialPlotter.setFrozen(frozen);
+        statsTask.markDirty();
+    }
+
+    // Decodes every port's bytes as text lines or as frames of the selected protocol
+    @FXML
+    public void updateProtocol() {
+        messageHandler.setFrameDecoder(FrameDecoders.forName(protocolBox.getValue()));
+        for (MessageHandler handler : additionalHandlers) {
+            handler.setFrameDecoder(FrameDecoders.forName(protocolBox.getValue()));
+        }
+    }
+
+    // Switches the monitor between decoded text and a hex dump of the main port's raw bytes
+    @FXML
+    public void updateViewMode() {
+        String mode = viewModeBox.getValue();
+        if (VIEW_TEXT.equals(mode)) {
+            hexLines = null;
+            serialMonitor.setLineSource(filteredLines);
+        } else {
+            hexLines = new HexLineSource(messageHandler.getStore(), VIEW_MIXED.equals(mode));
+            serialMonitor.setLineSource(hexLines);
+        }
     }
 
     @FXML
@@ -200,6 +371,418 @@ public class MainController implements SerialListener {
         serialMonitor.setAutoScroll(scrollToggle.isSelected());
     }
 
+    /*
+        Shows only the lines matching the filter expression (empty shows everything). The history is
+        re-evaluated in the background; the view switches over once the new line index is ready.
+     */
+    @FXML
+    public void applyFilter() {
+        String expression = filterField.getText();
+        LineFilter filter;
+        try {
+            filter = expression == null || expression.isBlank() ? null : LineFilter.parse(expression);
+        } catch (PatternSyntaxException e) {
+            connectionUpdateLabel.setText("Invalid filter");
+            return;
+        }
+        FilteredLineSource target = filteredLines;
+        target.setFilter(filter).thenRun(() -> javafx.application.Platform.runLater(() -> {
+            if (filteredLines == target && hexLines == null) {
+                serialMonitor.setLineSource(target);
+            }
+        }));
+    }
+
+    @FXML
+    public void findNext() {
+        search(true);
+    }
+
+    @FXML
+    public void findPrevious() {
+        search(false);
+    }
+
+    @FXML
+    public void onSearchOptionsChange() {
+        searchStatusLabel.setText("");
+    }
+
+    /*
+        Searches the main port's lines off the FX thread and jumps to the next (or previous) hit
+        relative to the selected line, wrapping around at either end.
+     */
+    private void search(boolean forward) {
+        String text = searchField.getText();
+        if (text == null || text.isEmpty()) {
+            searchStatusLabel.setText("");
+            return;
+        }
+        if (!additionalHandlers.isEmpty()) {
+            searchStatusLabel.setText("Search covers the main port only");
+            return;
+        }
+        if (hexLines != null) {
+            searchStatusLabel.setText("Search works in the text view");
+            return;
+        }
+        SearchQuery query;
+        try {
+            query = new SearchQuery(text, regexToggle.isSelected(), caseToggle.isSelected());
+        } catch (PatternSyntaxException e) {
+            searchStatusLabel.setText("Invalid regex");
+            return;
+        }
+        searchStatusLabel.setText("Searching...");
+        searchIndex.search(query, MAX_SEARCH_HITS).thenAccept(result ->
+                javafx.application.Platform.runLater(() -> showSearchResult(result, forward)));
+    }
+
+    private void showSearchResult(SearchResult result, boolean forward) {
+        // Hits are main-store lines; keep the ones the filter lets through
+        int[] hits = new int[result.getHitCount()];
+        int visible = 0;
+        for (int line : result.getLines()) {
+            if (filteredLines.getViewLine(line) >= 0) {
+                hits[visible++] = line;
+            }
+        }
+        hits = Arrays.copyOf(hits, visible);
+        if (hits.length == 0) {
+            searchStatusLabel.setText("No matches (" + result.getElapsedMillis() + " ms)");
+            return;
+        }
+        int selectedLine = serialMonitor.getSelectedLine();
+        int selected = selectedLine < 0 ? -1 : filteredLines.getSourceLine(selectedLine);
+        int hit;
+        if (selected < 0) {
+            // Nothing selected, or the selection is no longer in the view: start from either end
+            hit = forward ? 0 : hits.length - 1;
+        } else if (forward) {
+            int position = Arrays.binarySearch(hits, selected);
+            hit = position >= 0 ? position + 1 : -position - 1;
+            if (hit >= hits.length) { hit = 0; }
+        } else {
+            int position = Arrays.binarySearch(hits, selected);
+            hit = position >= 0 ? position - 1 : -position - 2;
+            if (hit < 0) { hit = hits.length - 1; }
+        }
+
+        scrollToggle.setSelected(false);
+        serialMonitor.setAutoScroll(false);
+        serialMonitor.scrollToLine(filteredLines.getViewLine(hits[hit]));
+        searchStatusLabel.setText((hit + 1) + "/" + hits.length + (result.isTruncated() ? "+" : "")
+                + " (" + result.getElapsedMillis() + " ms)");
+    }
+
+    /*
+        Streams the raw capture of the main port to .wtap files in a chosen directory,
+        rolling every RECORDING_FILE_BYTES and forcing each file to disk when it is rolled.
+     */
+    @FXML
+    public void toggleRecording() {
+        if (recordToggle.isSelected()) {
+            DirectoryChooser chooser = new DirectoryChooser();
+            chooser.setTitle("Record To");
+            File directory = chooser.showDialog(serialMonitor.getScene().getWindow());
+            if (directory == null) {
+                recordToggle.setSelected(false);
+                return;
+            }
+            recorder = new SessionRecorder(directory.toPath(), SerialService.getCurrentBaudRate());
+            recorder.setMaxFileBytes(RECORDING_FILE_BYTES);
+            recorder.setMaxFileDuration(1, TimeUnit.HOURS);
+            recorder.setFsyncPolicy(SessionRecorder.FsyncPolicy.ON_ROLL);
+            try {
+                recorder.start();
+            } catch (IOException e) {
+                recorder = null;
+                recordToggle.setSelected(false);
+                connectionUpdateLabel.setText("Failed to Start Recording");
+                return;
+            }
+            SerialService.getCurrentSession().addByteListener(recorder);
+            connectionUpdateLabel.setText("Recording to " + directory);
+        } else {
+            stopRecording();
+        }
+    }
+
+    /*
+        Plays a recording back through the main session as if it were a port. Any later files the recording was
+        rolled into are played after it.
+     */
+    @FXML
+    public void openReplay() {
+        if (connected) {
+            connectionUpdateLabel.setText("Disconnect before replaying");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Replay Recording");
+        chooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("WireTap recordings", "*" + RecordingFormat.EXTENSION));
+        File file = chooser.showOpenDialog(serialMonitor.getScene().getWindow());
+        if (file == null) { return; }
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(REPLAY_ORIGINAL, REPLAY_ORIGINAL, REPLAY_FAST, REPLAY_MAX);
+        dialog.setTitle("Replay Recording");
+        dialog.setHeaderText("Replay " + file.getName());
+        dialog.setContentText("Speed:");
+        dialog.showAndWait().ifPresent(speed -> {
+            SerialService.selectPort(ReplayBackend.PREFIX + file.getPath());
+            ReplayBackend replay = (ReplayBackend) SerialService.getCurrentPort();
+            if (REPLAY_FAST.equals(speed)) {
+                replay.setSpeed(10);
+            } else if (REPLAY_MAX.equals(speed)) {
+                replay.setSpeed(ReplayBackend.SPEED_MAX);
+            }
+            onConnectClick();
+        });
+    }
+
+    // Jumps the running replay to a time since the recording started; the views restart from there
+    @FXML
+    public void seekReplay() {
+        if (!connected || !(SerialService.getCurrentPort() instanceof ReplayBackend)) {
+            connectionUpdateLabel.setText("No replay running");
+            return;
+        }
+        ReplayBackend replay = (ReplayBackend) SerialService.getCurrentPort();
+        long positionSeconds = TimeUnit.NANOSECONDS.toSeconds(replay.getPositionNanos());
+        TextInputDialog dialog = new TextInputDialog(Long.toString(positionSeconds));
+        dialog.setTitle("Seek Replay");
+        dialog.setHeaderText("Seconds since the recording started");
+        dialog.showAndWait().ifPresent(text -> {
+            double seconds;
+            try {
+                seconds = Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                connectionUpdateLabel.setText("Invalid time");
+                return;
+            }
+            replay.seek((long) (seconds * 1e9), TimeUnit.NANOSECONDS);
+            clearMonitor();
+            serialPlotter.clear();
+        });
+    }
+
+    /*
+        Writes the main port's lines, with the current filter applied, to a text or CSV file (gzipped if the name
+        ends in .gz). Runs in the background; progress shows in the status label.
+     */
+    @FXML
+    public void exportLines() {
+        if (exporter != null) {
+            connectionUpdateLabel.setText("Export already running");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export Lines");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Text", "*.txt"),
+                new FileChooser.ExtensionFilter("CSV with timestamps", "*.csv"),
+                new FileChooser.ExtensionFilter("Gzipped text", "*.txt.gz"),
+                new FileChooser.ExtensionFilter("Gzipped CSV", "*.csv.gz"));
+        File file = chooser.showSaveDialog(serialMonitor.getScene().getWindow());
+        if (file == null) { return; }
+
+        LineExporter export = new LineExporter(messageHandler.getLines(),
+                messageHandler.getStore().getStartEpochMillis(), messageHandler.getStore().toNanoTime(0));
+        export.setFormatFromName(file.toPath());
+        export.setFilter(filteredLines.getFilter());
+        export.setProgressListener((done, total) -> framePump.post(() -> {
+            if (exporter == export) {
+                connectionUpdateLabel.setText("Exporting... " + (total == 0 ? 100 : done * 100 / total) + "%");
+            }
+        }));
+        exporter = export;
+        export.exportAsync(file.toPath()).whenComplete((lines, error) -> framePump.post(() -> {
+            exporter = null;
+            if (error != null) {
+                connectionUpdateLabel.setText("Export failed");
+            } else if (export.getEvictedLineCount() > 0) {
+                // Retention dropped the oldest lines from memory; the export can't include them
+                connectionUpdateLabel.setText("Exported " + lines + " lines to " + file.getName() + "; the oldest "
+                        + export.getEvictedLineCount() + " lines were no longer in memory and are not included");
+            } else {
+                connectionUpdateLabel.setText("Exported " + lines + " lines to " + file.getName());
+            }
+        }));
+    }
+
+    /*
+        Sends the send bar's text to the main port, or its bytes when Hex is ticked (e.g. "01 02 ff").
+        Text may use \r, \n, \t and \xHH escapes; the chosen line ending is added to text only.
+     */
+    @FXML
+    public void sendInput() {
+        if (!connected) {
+            connectionUpdateLabel.setText("Not connected");
+            return;
+        }
+        byte[] data;
+        try {
+            if (hexSendToggle.isSelected()) {
+                data = SendScript.parseHex(sendField.getText());
+            } else {
+                int ending = Arrays.asList(LINE_ENDING_NAMES).indexOf(lineEndingBox.getValue());
+                data = SendScript.unescape(sendField.getText() + (ending < 0 ? "" : LINE_ENDINGS[ending]));
+            }
+        } catch (IllegalArgumentException e) {
+            connectionUpdateLabel.setText("Invalid input: " + e.getMessage());
+            return;
+        }
+        if (data.length == 0) { return; }
+        if (!SerialService.send(data)) {
+            connectionUpdateLabel.setText("Send queue full");
+            return;
+        }
+        sendField.clear();
+    }
+
+    // Runs a send script (see SendScript) against the main port
+    @FXML
+    public void runScript() {
+        if (!connected) {
+            connectionUpdateLabel.setText("Not connected");
+            return;
+        }
+        if (scriptRunner != null) {
+            connectionUpdateLabel.setText("Script already running");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Run Script");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Send scripts", "*.txt", "*.wts"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(serialMonitor.getScene().getWindow());
+        if (file == null) { return; }
+
+        SendScript script;
+        try {
+            script = SendScript.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            connectionUpdateLabel.setText("Could not read " + file.getName());
+            return;
+        } catch (IllegalArgumentException e) {
+            connectionUpdateLabel.setText(e.getMessage());
+            return;
+        }
+        ScriptRunner runner = new ScriptRunner(script, SerialService.getCurrentSession());
+        scriptRunner = runner;
+        connectionUpdateLabel.setText("Running " + file.getName());
+        runner.start().whenComplete((ignored, error) -> framePump.post(() -> {
+            if (scriptRunner == runner) {
+                scriptRunner = null;
+            }
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                connectionUpdateLabel.setText("Script finished");
+            } else if (cause instanceof CancellationException) {
+                connectionUpdateLabel.setText("Script stopped");
+            } else {
+                connectionUpdateLabel.setText("Script failed: " + cause.getMessage());
+            }
+        }));
+    }
+
+    @FXML
+    public void stopScript() {
+        if (scriptRunner != null) {
+            scriptRunner.cancel();
+        }
+    }
+
+    /*
+        Measures round-trip time from each command written to the main port to the first line that answers it.
+        Replies are matched by /regex/ or by a plain line prefix; an empty pattern stops the measurement.
+        Starting again resets the histogram.
+     */
+    @FXML
+    public void measureLatency() {
+        TextField patternField = new TextField(responseLatency == null ? "" : lastLatencyPattern);
+        patternField.setPromptText("/regex/ or line prefix");
+        ChoiceBox<ResponseLatency.Clock> clockBox = new ChoiceBox<>();
+        clockBox.getItems().addAll(ResponseLatency.Clock.values());
+        clockBox.setValue(responseLatency == null ? new ResponseLatency().getClock() : responseLatency.getClock());
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.addRow(0, new Label("Reply:"), patternField);
+        grid.addRow(1, new Label("Clock:"), clockBox);
+
+        Dialog<ButtonType> dialog = new Dialog<>();
+        dialog.setTitle("Response Latency");
+        dialog.setHeaderText("Time from each command sent to the first matching reply line.\n"
+                + "Leave the reply empty to stop measuring.");
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) { return; }
+
+        String text = patternField.getText();
+        ResponseLatency latency = new ResponseLatency();
+        try {
+            if (text.length() >= 2 && text.startsWith("/") && text.endsWith("/")) {
+                latency.setResponsePattern(Pattern.compile(text.substring(1, text.length() - 1)));
+            } else {
+                latency.setResponsePrefix(text);
+            }
+        } catch (PatternSyntaxException e) {
+            connectionUpdateLabel.setText("Invalid reply pattern");
+            return;
+        }
+        latency.setClock(clockBox.getValue());
+        stopLatency();
+        if (text.isEmpty()) { return; }
+        PortSession session = SerialService.getCurrentSession();
+        session.addByteListener(latency);
+        session.addWriteListener(latency);
+        responseLatency = latency;
+        lastLatencyPattern = text;
+    }
+
+    private void stopLatency() {
+        if (responseLatency == null) { return; }
+        PortSession session = SerialService.getCurrentSession();
+        session.removeWriteListener(responseLatency);
+        session.removeByteListener(responseLatency);
+        responseLatency = null;
+        statsTask.markDirty();
+    }
+
+    private void stopRecording() {
+        if (recorder == null) { return; }
+        SessionRecorder stopping = recorder;
+        recorder = null;
+        SerialService.getCurrentSession().removeByteListener(stopping);
+        recordToggle.setSelected(false);
+        try {
+            stopping.close();
+            connectionUpdateLabel.setText("Recording Saved");
+        } catch (UncheckedIOException e) {
+            connectionUpdateLabel.setText("Recording failed: " + e.getCause().getMessage());
+        }
+    }
+
+    // Called by the application before the serial layer is shut down
+    public void shutdown() {
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        stopScript();
+        stopLatency();
+        statsTimer.stop();
+        metrics.unregister();
+        stopRecording();
+        searchIndex.stop();
+        messageHandler.close();
+        for (MessageHandler handler : additionalHandlers) {
+            handler.close();
+        }
+    }
+
     @FXML
     public void closeApplication() {
         javafx.application.Platform.exit();
@@ -227,6 +810,60 @@ public class MainController implements SerialListener {
         dialog.showAndWait();
     }
 
+    /*
+        Opens another port alongside the main one. Its lines are merged into the monitor in time order,
+        tagged with the port name.
+     */
+    @FXML
+    public void openAdditionalPort() {
+        List<String> choices = new ArrayList<>(Arrays.asList(SerialService.getAvailablePortNames()));
+        for (PortSession session : SerialService.getSessions()) {
+            choices.remove(session.getName());
+        }
+        if (choices.isEmpty()) {
+            connectionUpdateLabel.setText("No other ports available");
+            return;
+        }
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(choices.get(0), choices);
+        dialog.setTitle("Add Port");
+        dialog.setHeaderText("Capture another port alongside " +
+                (selectedPort == null ? "the main port" : selectedPort));
+        dialog.setContentText("Port:");
+        dialog.showAndWait().ifPresent(portName -> {
+            int baud = selectedBaudRate == null ? SerialService.getBaudRates().get(0) : Integer.parseInt(selectedBaudRate);
+            PortSession session = SerialService.openSession(portName, baud);
+            MessageHandler handler = new MessageHandler(session, serialMonitor);
+            handler.setFrameDecoder(FrameDecoders.forName(protocolBox.getValue()));
+            if (!session.open()) {
+                handler.close();
+                SerialService.closeSession(session);
+                connectionUpdateLabel.setText("Failed to open " + portName);
+                return;
+            }
+            additionalHandlers.add(handler);
+            updateMergedView();
+            connectionUpdateLabel.setText("Added " + portName + " @ " + baud);
+        });
+    }
+
+    private void updateMergedView() {
+        List<LineStore> stores = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        stores.add(messageHandler.getLines());
+        names.add(selectedPort == null ? "main" : selectedPort);
+        for (MessageHandler handler : additionalHandlers) {
+            stores.add(handler.getLines());
+            names.add(handler.getSession().getName());
+        }
+        LineFilter filter = filteredLines.getFilter();
+        filteredLines = new FilteredLineSource(new MergedLineSource(stores, names));
+        filteredLines.setFilter(filter);
+        if (hexLines == null) {
+            serialMonitor.setLineSource(filteredLines);
+        }
+    }
+
     @FXML
     public void openAboutMenu() {
         Label infoLabel = new Label("WireTap v" + WireTap.VERSION +
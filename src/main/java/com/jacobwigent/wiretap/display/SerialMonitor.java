@@ -1,82 +1,286 @@
 package com.jacobwigent.wiretap.display;
 
-import com.jacobwigent.wiretap.serial.SerialLine;
-import com.jacobwigent.wiretap.serial.SerialMessage;
-import javafx.collections.FXCollections;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
-import javafx.scene.control.ListCell;
-import javafx.scene.control.ListView;
+import com.jacobwigent.wiretap.serial.LineSource;
+import com.jacobwigent.wiretap.serial.LineStore;
+import javafx.geometry.Bounds;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.MouseButton;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 
-public class SerialMonitor extends ListView<SerialLine> {
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/*
+    Virtualized log view. Instead of a node per line it paints only the rows that fit in the viewport,
+    reading them straight from a LineSource, so the cost of a frame depends on the window size and not
+    on how many lines have been captured.
+ */
+public class SerialMonitor extends Region {
+
+    private static final Font FONT = Font.font("Monospaced", 12);
+    private static final Color TEXT_COLOR = Color.BLACK;
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+    private static final Color SELECTION_COLOR = Color.rgb(0, 120, 215, 0.25);
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar verticalBar = new ScrollBar();
+    private final ScrollBar horizontalBar = new ScrollBar();
+    private final double lineHeight;
+    private final double charWidth;
+
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private FramePump.Task refreshTask;
+    private Runnable onRefresh;
+
+    private LineSource lines = new LineStore();
     private boolean autoScroll = true;
 
-    private final ObservableList<SerialLine> displayedLines = FXCollections.observableArrayList();
+    // Lines before this index have been cleared from the view
+    private int firstLine = 0;
+    private int topLine = 0;
+    private int leftColumn = 0;
+    private int selectedLine = -1;
+    private int widestColumns = 0;
+    // Line count the view is pinned at while frozen, or -1 when live
+    private int frozenCount = -1;
 
     public SerialMonitor() {
-        this.setItems(displayedLines);
-
-        this.setCellFactory(list -> new ListCell<>() {
-            private ListChangeListener<SerialMessage> listener;
-            {
-                setOnMouseClicked(event -> {
-                    if (event.getButton().equals(MouseButton.PRIMARY) && event.getClickCount() == 2) {
-                        SerialLine line = getItem();
-                        if (line != null) {
-                            System.out.println("Double clicked on: " + line.getLineText());
-                        }
-                    }
-                });
-            }
-            @Override
-            protected void updateItem(SerialLine line, boolean empty) {
-                super.updateItem(line, empty);
-
-                // Remove old listener from previous item
-                if (listener != null && getItem() != null) {
-                    getItem().getMessages().removeListener(listener);
-                    listener = null;
-                }
-
-                if (empty || line == null) {
-                    setText(null);
-                } else {
-                    // Set initial text
-                    setText(line.getLineText());
-
-                    // Register listener to update text on future changes
-                    listener = change -> javafx.application.Platform.runLater(() -> setText(line.getLineText()));
-                    line.getMessages().addListener(listener);
-                }
+        Text probe = new Text("W");
+        probe.setFont(FONT);
+        Bounds bounds = probe.getLayoutBounds();
+        lineHeight = Math.ceil(bounds.getHeight());
+        charWidth = bounds.getWidth();
+
+        verticalBar.setOrientation(Orientation.VERTICAL);
+        horizontalBar.setOrientation(Orientation.HORIZONTAL);
+        verticalBar.valueProperty().addListener((obs, oldValue, newValue) -> {
+            int line = (int) Math.round(newValue.doubleValue());
+            if (line != topLine) {
+                topLine = line;
+                draw();
             }
         });
-        displayedLines.addListener((ListChangeListener<SerialLine>) change -> {
-            while (change.next()) {
-                if (autoScroll && change.wasAdded()) {
-                    int newIndex = change.getFrom();
-                    javafx.application.Platform.runLater(() -> scrollTo(newIndex));
-                }
+        horizontalBar.valueProperty().addListener((obs, oldValue, newValue) -> {
+            leftColumn = (int) Math.round(newValue.doubleValue());
+            draw();
+        });
+
+        canvas.setOnScroll(this::onScroll);
+        canvas.setOnMouseClicked(event -> {
+            if (!event.getButton().equals(MouseButton.PRIMARY)) { return; }
+            int line = lineAt(event.getY());
+            if (line < 0) { return; }
+            selectedLine = line;
+            draw();
+            if (event.getClickCount() == 2) {
+                // Double-click copies the line
+                ClipboardContent content = new ClipboardContent();
+                content.putString(lines.getLineText(line));
+                Clipboard.getSystemClipboard().setContent(content);
             }
         });
+
+        getChildren().addAll(canvas, verticalBar, horizontalBar);
+        setPadding(Insets.EMPTY);
     }
 
-    public void addLine(SerialLine line) {
-        javafx.application.Platform.runLater(() -> {
-            displayedLines.add(line);
-        });
+    public void setLineSource(LineSource lines) {
+        this.lines = lines;
+        if (frozenCount >= 0) {
+            // A new view is synced once, then pinned like the one it replaces
+            lines.sync();
+            frozenCount = lines.getLineCount();
+        }
+        firstLine = 0;
+        topLine = 0;
+        selectedLine = -1;
+        refresh();
+    }
+
+    public LineSource getLineSource() {
+        return lines;
+    }
+
+    public void setFramePump(FramePump framePump) {
+        refreshTask = framePump.register(this::refresh);
+    }
+
+    // May be called from any thread; redraws are coalesced into at most one per frame
+    public void requestRefresh() {
+        if (refreshTask != null) {
+            refreshTask.markDirty();
+        } else if (refreshPending.compareAndSet(false, true)) {
+            javafx.application.Platform.runLater(() -> {
+                refreshPending.set(false);
+                refresh();
+            });
+        }
+    }
+
+    public void refresh() {
+        if (frozenCount < 0) {
+            lines.sync();
+        }
+        updateScrollBars();
+        draw();
+        if (onRefresh != null) {
+            onRefresh.run();
+        }
+    }
+
+    // Runs on the FX thread after every refresh, once the new lines are drawn
+    public void setOnRefresh(Runnable onRefresh) {
+        this.onRefresh = onRefresh;
     }
 
     public void clear() {
         javafx.application.Platform.runLater(() -> {
-            displayedLines.clear();
-            this.refresh();
+            firstLine = lineCount();
+            topLine = firstLine;
+            selectedLine = -1;
+            widestColumns = 0;
+            refresh();
         });
     }
 
+    public void scrollToLine(int line) {
+        topLine = clampTop(line - getVisibleRows() / 2);
+        selectedLine = line;
+        refresh();
+    }
+
+    public int getSelectedLine() {
+        return selectedLine;
+    }
+
+    /*
+        Pins the view at the lines it shows now. Capture carries on underneath; unfreezing only releases
+        the pin and the next refresh catches up in one step.
+     */
+    public void setFrozen(boolean frozen) {
+        frozenCount = frozen ? lines.getLineCount() : -1;
+        refresh();
+    }
+
+    public boolean isFrozen() {
+        return frozenCount >= 0;
+    }
+
+    private int lineCount() {
+        int count = lines.getLineCount();
+        return frozenCount >= 0 ? Math.min(frozenCount, count) : count;
+    }
 
     public void setAutoScroll(boolean autoScroll) {
         this.autoScroll = autoScroll;
+        refresh();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        Insets insets = getInsets();
+        double x = insets.getLeft();
+        double y = insets.getTop();
+        double barWidth = verticalBar.prefWidth(-1);
+        double barHeight = horizontalBar.prefHeight(-1);
+        double width = Math.max(0, getWidth() - x - insets.getRight() - barWidth);
+        double height = Math.max(0, getHeight() - y - insets.getBottom() - barHeight);
+
+        canvas.setLayoutX(x);
+        canvas.setLayoutY(y);
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        verticalBar.resizeRelocate(x + width, y, barWidth, height);
+        horizontalBar.resizeRelocate(x, y + height, width, barHeight);
+        refresh();
+    }
+
+    private void onScroll(ScrollEvent event) {
+        if (event.getDeltaY() != 0) {
+            int rows = (int) Math.round(-event.getDeltaY() / lineHeight);
+            if (rows == 0) {
+                rows = event.getDeltaY() > 0 ? -1 : 1;
+            }
+            topLine = clampTop(topLine + rows);
+        }
+        if (event.getDeltaX() != 0) {
+            leftColumn = (int) Math.max(0, Math.min(horizontalBar.getMax(), leftColumn - event.getDeltaX() / charWidth));
+        }
+        refresh();
+        event.consume();
+    }
+
+    private void updateScrollBars() {
+        if (autoScroll) {
+            topLine = maxTop();
+        }
+        topLine = clampTop(topLine);
+
+        verticalBar.setMin(minTop());
+        verticalBar.setMax(maxTop());
+        verticalBar.setVisibleAmount(getVisibleRows());
+        verticalBar.setValue(topLine);
+
+        int visibleColumns = (int) (canvas.getWidth() / charWidth);
+        horizontalBar.setMax(Math.max(0, widestColumns - visibleColumns));
+        horizontalBar.setVisibleAmount(visibleColumns);
+    }
+
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(0, 0, width, height);
+
+        gc.setFont(FONT);
+        gc.setTextBaseline(VPos.TOP);
+        int count = lineCount();
+        int rows = getVisibleRows() + 1;
+        int columns = (int) (width / charWidth) + 1;
+        for (int row = 0; row < rows; row++) {
+            int line = topLine + row;
+            if (line >= count) { break; }
+            double y = row * lineHeight;
+            if (line == selectedLine) {
+                gc.setFill(SELECTION_COLOR);
+                gc.fillRect(0, y, width, lineHeight);
+            }
+            widestColumns = Math.max(widestColumns, lines.getLineLength(line));
+            gc.setFill(TEXT_COLOR);
+            gc.fillText(lines.getLineText(line, leftColumn, columns), 2, y);
+        }
+    }
+
+    private int lineAt(double y) {
+        int line = topLine + (int) (y / lineHeight);
+        return line < lineCount() ? line : -1;
+    }
+
+    private int getVisibleRows() {
+        return Math.max(1, (int) (canvas.getHeight() / lineHeight));
+    }
+
+    // Cleared lines and lines the source has evicted are out of reach
+    private int minTop() {
+        return Math.max(firstLine, lines.getFirstLine());
+    }
+
+    private int maxTop() {
+        return Math.max(minTop(), lineCount() - getVisibleRows());
+    }
+
+    private int clampTop(int line) {
+        return Math.max(minTop(), Math.min(line, maxTop()));
     }
 }
@@ -0,0 +1,242 @@
+package com.jacobwigent.wiretap.display;
+
+import com.jacobwigent.wiretap.plot.PlotModel;
+import com.jacobwigent.wiretap.plot.SampleRing;
+import com.jacobwigent.wiretap.serial.LineSource;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Scrolling plot of the numeric fields in the line stream. Like SerialMonitor it paints a single canvas
+    instead of keeping chart nodes: each frame every channel is decimated to a min/max pair per pixel column
+    of the time window and drawn as one path, so the cost of a frame depends on the width and the window,
+    not on the sample rate.
+ */
+public class SerialPlotter extends Region {
+
+    private static final Font FONT = Font.font("Monospaced", 11);
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+    private static final Color AXIS_COLOR = Color.gray(0.4);
+    private static final Color GRID_COLOR = Color.gray(0.9);
+    private static final Color[] CHANNEL_COLORS = {
+            Color.rgb(31, 119, 180), Color.rgb(255, 127, 14), Color.rgb(44, 160, 44), Color.rgb(214, 39, 40),
+            Color.rgb(148, 103, 189), Color.rgb(140, 86, 75), Color.rgb(227, 119, 194), Color.rgb(127, 127, 127)
+    };
+    private static final double LEFT_MARGIN = 70;
+    private static final double MARGIN = 10;
+    // Lines parsed per frame; the rest waits for the next one
+    private static final int LINES_PER_FRAME = 50_000;
+    private static final double LEGEND_ROW = 14;
+
+    private final Canvas canvas = new Canvas();
+    private final PlotModel model = new PlotModel();
+    private FramePump.Task refreshTask;
+
+    private long windowNanos = TimeUnit.SECONDS.toNanos(10);
+    private boolean frozen = false;
+
+    // Per channel min/max of each pixel column, reused between frames
+    private double[][] columnMin = new double[0][];
+    private double[][] columnMax = new double[0][];
+
+    public SerialPlotter() {
+        // Clicking a legend entry hides or shows that channel
+        canvas.setOnMouseClicked(event -> {
+            if (event.getX() < LEFT_MARGIN || event.getX() > LEFT_MARGIN + 200) { return; }
+            int row = (int) ((event.getY() - MARGIN) / LEGEND_ROW);
+            List<PlotModel.Channel> channels = model.getChannels();
+            if (row >= 0 && row < channels.size()) {
+                PlotModel.Channel channel = channels.get(row);
+                channel.setVisible(!channel.isVisible());
+                draw();
+            }
+        });
+        getChildren().add(canvas);
+    }
+
+    public void setFramePump(FramePump framePump) {
+        refreshTask = framePump.register(this::refresh);
+    }
+
+    public void setLineSource(LineSource lines) {
+        model.setSource(lines);
+        requestRefresh();
+    }
+
+    public PlotModel getModel() {
+        return model;
+    }
+
+    public void setWindow(long window, TimeUnit unit) {
+        windowNanos = unit.toNanos(window);
+        requestRefresh();
+    }
+
+    // While frozen no new lines are parsed; they are caught up on when the freeze ends
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+        requestRefresh();
+    }
+
+    public void clear() {
+        model.clear();
+        requestRefresh();
+    }
+
+    // May be called from any thread
+    public void requestRefresh() {
+        if (refreshTask != null) {
+            refreshTask.markDirty();
+        }
+    }
+
+    public void refresh() {
+        if (!frozen) {
+            model.update(LINES_PER_FRAME);
+            if (model.hasPending()) {
+                requestRefresh();
+            }
+        }
+        // Parsing has to keep up while the tab is hidden, drawing doesn't
+        if (isVisible() && getScene() != null && canvas.getWidth() > 0) {
+            draw();
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        draw();
+    }
+
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(0, 0, width, height);
+
+        double plotWidth = width - LEFT_MARGIN - MARGIN;
+        double plotHeight = height - 2 * MARGIN;
+        int columns = (int) plotWidth;
+        if (columns <= 0 || plotHeight <= 0) { return; }
+
+        List<PlotModel.Channel> channels = model.getChannels();
+        ensureColumns(channels.size(), columns);
+        long end = model.getLatestTime();
+        if (end == Long.MIN_VALUE) {
+            drawFrame(gc, plotWidth, plotHeight, 0, 1);
+            return;
+        }
+        end++;
+        long start = end - windowNanos;
+
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < channels.size(); i++) {
+            PlotModel.Channel channel = channels.get(i);
+            if (!channel.isVisible()) { continue; }
+            channel.getSamples().decimate(start, end, columnMin[i], columnMax[i]);
+            for (int c = 0; c < columns; c++) {
+                // NaN fails both comparisons
+                if (columnMin[i][c] < low) { low = columnMin[i][c]; }
+                if (columnMax[i][c] > high) { high = columnMax[i][c]; }
+            }
+        }
+        if (low > high) {
+            low = 0;
+            high = 1;
+        } else if (low == high) {
+            low -= 1;
+            high += 1;
+        }
+        drawFrame(gc, plotWidth, plotHeight, low, high);
+
+        double scale = plotHeight / (high - low);
+        double bottom = MARGIN + plotHeight;
+        gc.setLineWidth(1);
+        for (int i = 0; i < channels.size(); i++) {
+            PlotModel.Channel channel = channels.get(i);
+            if (!channel.isVisible()) { continue; }
+            double[] min = columnMin[i];
+            double[] max = columnMax[i];
+            gc.setStroke(CHANNEL_COLORS[i % CHANNEL_COLORS.length]);
+            gc.beginPath();
+            boolean started = false;
+            for (int c = 0; c < columns; c++) {
+                if (Double.isNaN(min[c])) { continue; }
+                double x = LEFT_MARGIN + c + 0.5;
+                double yMax = bottom - (max[c] - low) * scale;
+                double yMin = bottom - (min[c] - low) * scale;
+                if (started) {
+                    gc.lineTo(x, yMax);
+                } else {
+                    gc.moveTo(x, yMax);
+                    started = true;
+                }
+                gc.lineTo(x, yMin);
+            }
+            gc.stroke();
+        }
+        drawLegend(gc, channels);
+    }
+
+    private void ensureColumns(int channelCount, int columns) {
+        if (columnMin.length < channelCount || (channelCount > 0 && columnMin[0].length != columns)) {
+            columnMin = new double[channelCount][columns];
+            columnMax = new double[channelCount][columns];
+        }
+    }
+
+    private void drawFrame(GraphicsContext gc, double plotWidth, double plotHeight, double low, double high) {
+        gc.setFont(FONT);
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setLineWidth(1);
+        int gridLines = 4;
+        for (int g = 0; g <= gridLines; g++) {
+            double y = Math.round(MARGIN + plotHeight * g / gridLines) + 0.5;
+            gc.setStroke(GRID_COLOR);
+            gc.strokeLine(LEFT_MARGIN, y, LEFT_MARGIN + plotWidth, y);
+            gc.setFill(AXIS_COLOR);
+            gc.fillText(formatValue(high - (high - low) * g / gridLines), 4, y);
+        }
+        gc.setStroke(AXIS_COLOR);
+        gc.strokeRect(LEFT_MARGIN + 0.5, MARGIN + 0.5, plotWidth, plotHeight);
+        gc.fillText("-" + TimeUnit.NANOSECONDS.toSeconds(windowNanos) + " s", LEFT_MARGIN + 4,
+                MARGIN + plotHeight - 8);
+    }
+
+    private void drawLegend(GraphicsContext gc, List<PlotModel.Channel> channels) {
+        double y = MARGIN + LEGEND_ROW / 2;
+        for (int i = 0; i < channels.size(); i++) {
+            PlotModel.Channel channel = channels.get(i);
+            SampleRing samples = channel.getSamples();
+            String text = channel.getName();
+            if (samples.getCount() > 0) {
+                text += " = " + formatValue(samples.getValue(samples.getCount() - 1));
+            }
+            if (!channel.isVisible()) {
+                text += " (hidden)";
+            }
+            gc.setFill(CHANNEL_COLORS[i % CHANNEL_COLORS.length]);
+            gc.fillText(text, LEFT_MARGIN + 8, y);
+            y += LEGEND_ROW;
+        }
+    }
+
+    private static String formatValue(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude != 0 && (magnitude >= 1e6 || magnitude < 1e-3)) {
+            return String.format("%.3e", value);
+        }
+        return String.format("%.3f", value);
+    }
+}
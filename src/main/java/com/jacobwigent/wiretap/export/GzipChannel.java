@@ -0,0 +1,95 @@
+package com.jacobwigent.wiretap.export;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+    Writes a gzip stream (RFC 1952) to another channel. Input is deflated straight from the caller's buffer
+    into one reused direct buffer, so compressing doesn't copy through byte arrays or streams.
+    Closing finishes the stream and closes the target channel.
+ */
+public class GzipChannel implements WritableByteChannel {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] NO_INPUT = new byte[0];
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final WritableByteChannel target;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long inputBytes = 0;
+    private boolean open = true;
+
+    public GzipChannel(WritableByteChannel target) throws IOException {
+        this(target, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public GzipChannel(WritableByteChannel target, int level) throws IOException {
+        this.target = target;
+        this.deflater = new Deflater(level, true);
+        buffer.put(HEADER);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) { throw new ClosedChannelException(); }
+        int length = src.remaining();
+        crc.update(src.duplicate());
+        inputBytes += length;
+        deflater.setInput(src);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+        // The deflater keeps reading from the buffer it was given; the caller is about to reuse it
+        deflater.setInput(NO_INPUT);
+        return length;
+    }
+
+    private void deflate() throws IOException {
+        deflater.deflate(buffer);
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) { return; }
+        open = false;
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            if (buffer.remaining() < 8) {
+                drain();
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt((int) crc.getValue());
+            buffer.putInt((int) inputBytes);
+            drain();
+        } finally {
+            deflater.end();
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.jacobwigent.wiretap.export;
+
+import com.jacobwigent.wiretap.search.LineFilter;
+import com.jacobwigent.wiretap.serial.LineSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/*
+    Streams lines out of a LineSource into a file as plain text or CSV, optionally gzip-compressed.
+    Each line is read into one reused buffer, encoded to UTF-8 into a direct buffer and written to the file
+    channel in large blocks, so memory use is flat however many lines are exported. Runs on its own thread and
+    reports progress as it goes; the source may keep growing meanwhile, and the export covers the lines that
+    existed when it started.
+
+    Only lines the source still holds are exported. Lines a retention-bounded LineStore has already evicted
+    (-Dwiretap.maxLines, -Dwiretap.maxChars, -Dwiretap.maxAgeSeconds) are not re-decoded from the raw capture;
+    getEvictedLineCount() says how many were left out.
+
+    CSV rows are: elapsed milliseconds since the capture started, local wall-clock time to the microsecond, and the quoted text.
+ */
+public class LineExporter {
+
+    public enum Format { TEXT, CSV }
+
+    public interface ProgressListener {
+        // Called from the export thread every few thousand lines, and once at the end
+        void onProgress(long linesDone, long linesTotal);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 1 << 14;
+    private static final String CSV_HEADER = "elapsed_ms,time,text\n";
+
+    private final LineSource lines;
+    // Epoch millis and System.nanoTime() of the same instant, for converting line times
+    private final long anchorEpochMillis;
+    private final long anchorNanos;
+
+    private Format format = Format.TEXT;
+    private boolean compressed = false;
+    private LineFilter filter;
+    private ProgressListener progressListener;
+    private volatile boolean cancelled = false;
+    private volatile long evictedLines = 0;
+
+    // Export-thread state
+    private final StringBuilder row = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ZoneRules zone = ZoneId.systemDefault().getRules();
+    // Local date and UTC offset of the current day, valid for epoch millis in [dayStart, dayEnd)
+    private String datePrefix;
+    private long dayStart = 1;
+    private long dayEnd = 0;
+    private long offsetMillis;
+
+    // startNanos is the System.nanoTime() of the capture start that elapsed times count from
+    public LineExporter(LineSource lines, long startEpochMillis, long startNanos) {
+        this.lines = lines;
+        this.anchorEpochMillis = startEpochMillis;
+        this.anchorNanos = startNanos;
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    // Only lines the filter accepts are exported; null exports everything
+    public void setFilter(LineFilter filter) {
+        this.filter = filter;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // Picks format and compression from a name like "log.csv.gz"
+    public void setFormatFromName(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        compressed = name.endsWith(".gz");
+        if (compressed) {
+            name = name.substring(0, name.length() - 3);
+        }
+        format = name.endsWith(".csv") ? Format.CSV : Format.TEXT;
+    }
+
+    // Stops a running export; its future fails with CancellationException and the partial file is removed
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Lines of the source that were evicted before the export could read them, and so are missing from it
+    public long getEvictedLineCount() {
+        return evictedLines;
+    }
+
+    // Exports on a new background thread; completes with the number of lines written
+    public CompletableFuture<Long> exportAsync(Path file) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(export(file));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, "export-" + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    public long export(Path file) throws IOException {
+        boolean done = false;
+        try (WritableByteChannel channel = open(file)) {
+            long written = export(channel);
+            done = true;
+            return written;
+        } finally {
+            if (!done) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private WritableByteChannel open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return compressed ? new GzipChannel(channel) : channel;
+    }
+
+    // Writes the lines to the channel without closing it and returns how many were written
+    public long export(WritableByteChannel out) throws IOException {
+        int first = lines.getFirstLine();
+        int end = lines.getLineCount();
+        long total = end - first;
+        LineFilter.Evaluator evaluator = filter == null ? null : filter.newEvaluator();
+        long written = 0;
+        long evicted = first;
+
+        bytes.clear();
+        if (format == Format.CSV) {
+            encode(CSV_HEADER, out);
+        }
+        for (int line = first; line < end; line++) {
+            if (cancelled) {
+                throw new CancellationException("Export cancelled");
+            }
+            text.setLength(0);
+            lines.appendLineText(line, text);
+            // Lines evicted while we got to them come back empty; they are gone from the export too
+            if (line < lines.getFirstLine()) {
+                evicted++;
+                continue;
+            }
+            if (evaluator == null || evaluator.accept(text)) {
+                appendRow(line);
+                encode(row, out);
+                written++;
+            }
+            if (progressListener != null && (line - first) % PROGRESS_INTERVAL == 0) {
+                progressListener.onProgress(line - first, total);
+            }
+        }
+        flush(out);
+        evictedLines = evicted;
+        if (progressListener != null) {
+            progressListener.onProgress(total, total);
+        }
+        return written;
+    }
+
+    private void appendRow(int line) {
+        row.setLength(0);
+        if (format == Format.TEXT) {
+            row.append(text).append('\n');
+            return;
+        }
+        long time = lines.getLineTime(line);
+        long elapsedMicros = (time - anchorNanos) / 1000;
+        row.append(elapsedMicros / 1000).append('.');
+        appendDigits(row, elapsedMicros % 1000, 3);
+        row.append(',');
+        appendTime(anchorEpochMillis * 1000L + Math.floorDiv(time - anchorNanos, 1000L));
+        row.append(",\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append("\"\n");
+    }
+
+    // ISO local date-time with microseconds; the date part is only recomputed when the day (or offset) changes
+    private void appendTime(long epochMicros) {
+        long epochMillis = Math.floorDiv(epochMicros, 1000L);
+        if (epochMillis < dayStart || epochMillis >= dayEnd) {
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            offsetMillis = zone.getOffset(instant).getTotalSeconds() * 1000L;
+            LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochMillis + offsetMillis, 86_400_000L));
+            datePrefix = date + "T";
+            dayStart = date.toEpochDay() * 86_400_000L - offsetMillis;
+            dayEnd = dayStart + 86_400_000L;
+            ZoneOffsetTransition transition = zone.nextTransition(instant);
+            if (transition != null) {
+                dayEnd = Math.min(dayEnd, transition.toEpochSecond() * 1000L);
+            }
+        }
+        long millisOfDay = epochMillis + offsetMillis - Math.floorDiv(epochMillis + offsetMillis, 86_400_000L) * 86_400_000L;
+        row.append(datePrefix);
+        appendDigits(row, millisOfDay / 3_600_000L, 2);
+        row.append(':');
+        appendDigits(row, millisOfDay / 60_000L % 60, 2);
+        row.append(':');
+        appendDigits(row, millisOfDay / 1000 % 60, 2);
+        row.append('.');
+        appendDigits(row, millisOfDay % 1000, 3);
+        appendDigits(row, Math.floorMod(epochMicros, 1000L), 3);
+    }
+
+    // Zero-padded to width digits
+    private static void appendDigits(StringBuilder sb, long value, int width) {
+        long limit = 1;
+        for (int i = 1; i < width; i++) {
+            limit *= 10;
+        }
+        for (; limit > 1 && value < limit; limit /= 10) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+
+    private void encode(CharSequence chars, WritableByteChannel out) throws IOException {
+        CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(in, bytes, true);
+            if (!result.isOverflow()) { return; }
+            flush(out);
+        }
+    }
+
+    private void flush(WritableByteChannel out) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+}
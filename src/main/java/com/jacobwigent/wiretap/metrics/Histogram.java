@@ -0,0 +1,127 @@
+package com.jacobwigent.wiretap.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Lock-free histogram of non-negative longs (sizes, nanoseconds). Values are counted in log-linear buckets:
+    each power of two is split into 8 sub-buckets, so any value is reported within 12.5% using a fixed 4 KB of
+    counters, and recording is a single atomic increment. Any number of threads may record while others
+    take snapshots.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long value) {
+        counts.getAndIncrement(bucketOf(Math.max(0, value)));
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) { return (int) value; }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Smallest value that lands in the bucket
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) { return bucket; }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    // Middle of the bucket, the value reported for everything in it
+    static long midpoint(int bucket) {
+        if (bucket + 1 >= BUCKETS) { return Long.MAX_VALUE; }
+        long low = lowerBound(bucket);
+        return low + (lowerBound(bucket + 1) - low) / 2;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    /*
+        Counts at one moment. Subtracting an earlier snapshot of the same histogram gives the distribution of
+        just that interval, and adding snapshots merges histograms.
+     */
+    public static class Snapshot {
+
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKETS]);
+
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(diff);
+        }
+
+        public Snapshot plus(Snapshot other) {
+            long[] sum = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                sum[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(sum);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // Value below which the given fraction (0..1) of the recorded values fall, or 0 if there are none
+        public long getPercentile(double fraction) {
+            if (count == 0) { return 0; }
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return midpoint(i);
+                }
+            }
+            return midpoint(BUCKETS - 1);
+        }
+
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return midpoint(i);
+                }
+            }
+            return 0;
+        }
+
+        public double getMean() {
+            if (count == 0) { return 0; }
+            double sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    sum += (double) counts[i] * midpoint(i);
+                }
+            }
+            return sum / count;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.jacobwigent.wiretap.metrics;
+
+import com.jacobwigent.wiretap.serial.PortSession;
+import com.jacobwigent.wiretap.serial.SerialService;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/*
+    Where the capture pipeline spends its capacity: read throughput and sizes from every open session,
+    read-to-display latency, the UI's backlog and overruns, and memory held by the capture.
+
+    The hot paths only bump lock-free counters and histograms. sample() is called at a fixed rate (the stats
+    panel's refresh) and turns them into per-interval rates and percentiles, which both the panel and JMX read.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.jacobwigent.wiretap:type=PipelineMetrics";
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final Histogram displayLatency = new Histogram();
+    // Read time of the oldest chunk that has not been drawn yet
+    private final AtomicLong oldestUndisplayed = new AtomicLong(NONE);
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private IntSupplier fxQueueDepth = () -> 0;
+    private LongSupplier frameOverruns = () -> 0;
+    private LongSupplier captureHeap = () -> 0;
+
+    // Previous sample
+    private long lastSampleNanos = 0;
+    private long lastBytes = 0;
+    private long lastChunks = 0;
+    private Histogram.Snapshot lastReadSizes = Histogram.Snapshot.EMPTY;
+    private Histogram.Snapshot lastLatency = Histogram.Snapshot.EMPTY;
+
+    // Results of the last sample, read by the panel and JMX
+    private volatile long totalBytes;
+    private volatile long totalChunks;
+    private volatile double bytesPerSecond;
+    private volatile double chunksPerSecond;
+    private volatile Histogram.Snapshot readSizes = Histogram.Snapshot.EMPTY;
+    private volatile Histogram.Snapshot latency = Histogram.Snapshot.EMPTY;
+    private volatile long droppedChunks;
+
+    public void setFxQueueDepth(IntSupplier fxQueueDepth) {
+        this.fxQueueDepth = fxQueueDepth;
+    }
+
+    public void setFrameOverruns(LongSupplier frameOverruns) {
+        this.frameOverruns = frameOverruns;
+    }
+
+    // Bytes of heap held by decoded lines and other in-memory capture structures
+    public void setCaptureHeap(LongSupplier captureHeap) {
+        this.captureHeap = captureHeap;
+    }
+
+    // A chunk read at timestampNanos is waiting to be shown; any thread
+    public void markReceived(long timestampNanos) {
+        oldestUndisplayed.compareAndSet(NONE, timestampNanos);
+    }
+
+    // Everything received so far is now on screen; records how long the oldest of it waited
+    public void markDisplayed() {
+        long oldest = oldestUndisplayed.getAndSet(NONE);
+        if (oldest != NONE) {
+            displayLatency.record(System.nanoTime() - oldest);
+        }
+    }
+
+    // Closes the current interval; call at a fixed rate from one thread
+    public synchronized void sample() {
+        long now = System.nanoTime();
+        long bytes = 0;
+        long chunks = 0;
+        long dropped = 0;
+        Histogram.Snapshot sizes = Histogram.Snapshot.EMPTY;
+        for (PortSession session : SerialService.getSessions()) {
+            bytes += session.getBytesRead();
+            chunks += session.getChunksRead();
+            dropped += session.getDroppedChunkCount();
+            sizes = sizes.plus(session.getReadSizes().snapshot());
+        }
+        Histogram.Snapshot latencies = displayLatency.snapshot();
+
+        if (lastSampleNanos != 0) {
+            double seconds = (now - lastSampleNanos) / 1e9;
+            // Counters restart when a port reconnects
+            bytesPerSecond = Math.max(0, bytes - lastBytes) / seconds;
+            chunksPerSecond = Math.max(0, chunks - lastChunks) / seconds;
+            readSizes = sizes.minus(lastReadSizes);
+            latency = latencies.minus(lastLatency);
+        }
+        totalBytes = bytes;
+        totalChunks = chunks;
+        droppedChunks = dropped;
+        lastSampleNanos = now;
+        lastBytes = bytes;
+        lastChunks = chunks;
+        lastReadSizes = sizes;
+        lastLatency = latencies;
+    }
+
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Another window already publishes its metrics
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException e) {
+            // Never registered
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Multi-line summary for the stats panel
+    public void appendSummary(StringBuilder sb) {
+        sb.append("Throughput: ");
+        appendBytes(sb, (long) bytesPerSecond).append("/s, ");
+        sb.append((long) chunksPerSecond).append(" reads/s\n");
+        Histogram.Snapshot sizes = readSizes;
+        sb.append("Read size: p50 ").append(sizes.getPercentile(0.5))
+                .append(" B, p99 ").append(sizes.getPercentile(0.99)).append(" B\n");
+        Histogram.Snapshot latencies = latency;
+        sb.append("Display latency: p50 ");
+        appendMillis(sb, latencies.getPercentile(0.5)).append(", p99 ");
+        appendMillis(sb, latencies.getPercentile(0.99)).append(", max ");
+        appendMillis(sb, latencies.getMax()).append('\n');
+        sb.append("UI backlog: ").append(getFxQueueDepth())
+                .append(", frame overruns: ").append(getFrameOverruns()).append('\n');
+        sb.append("Dropped reads: ").append(droppedChunks).append('\n');
+        sb.append("Capture heap: ");
+        appendBytes(sb, getCaptureHeapBytes()).append(" of ");
+        appendBytes(sb, getHeapUsedBytes()).append(" used\n");
+    }
+
+    private static StringBuilder appendBytes(StringBuilder sb, long bytes) {
+        if (bytes < 10_000) { return sb.append(bytes).append(" B"); }
+        if (bytes < 10_000_000) { return sb.append(bytes >> 10).append(" KB"); }
+        return sb.append(bytes >> 20).append(" MB");
+    }
+
+    // Nanoseconds as milliseconds with one decimal
+    private static StringBuilder appendMillis(StringBuilder sb, long nanos) {
+        long tenths = nanos / 100_000;
+        return sb.append(tenths / 10).append('.').append(tenths % 10).append(" ms");
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public long getTotalChunks() {
+        return totalChunks;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public double getChunksPerSecond() {
+        return chunksPerSecond;
+    }
+
+    @Override
+    public long getReadSizeMedian() {
+        return readSizes.getPercentile(0.5);
+    }
+
+    @Override
+    public long getReadSizeP99() {
+        return readSizes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getDisplayLatencyMedianMicros() {
+        return latency.getPercentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getDisplayLatencyP99Micros() {
+        return latency.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getDisplayLatencyMaxMicros() {
+        return latency.getMax() / 1000;
+    }
+
+    @Override
+    public int getFxQueueDepth() {
+        return fxQueueDepth.getAsInt();
+    }
+
+    @Override
+    public long getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    @Override
+    public long getFrameOverruns() {
+        return frameOverruns.getAsLong();
+    }
+
+    @Override
+    public long getCaptureHeapBytes() {
+        return captureHeap.getAsLong();
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
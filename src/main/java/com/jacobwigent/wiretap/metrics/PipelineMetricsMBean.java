@@ -0,0 +1,33 @@
+package com.jacobwigent.wiretap.metrics;
+
+// JMX view of PipelineMetrics; rates and percentiles cover the last sampling interval
+public interface PipelineMetricsMBean {
+
+    long getTotalBytes();
+
+    long getTotalChunks();
+
+    double getBytesPerSecond();
+
+    double getChunksPerSecond();
+
+    long getReadSizeMedian();
+
+    long getReadSizeP99();
+
+    long getDisplayLatencyMedianMicros();
+
+    long getDisplayLatencyP99Micros();
+
+    long getDisplayLatencyMaxMicros();
+
+    int getFxQueueDepth();
+
+    long getDroppedChunks();
+
+    long getFrameOverruns();
+
+    long getCaptureHeapBytes();
+
+    long getHeapUsedBytes();
+}
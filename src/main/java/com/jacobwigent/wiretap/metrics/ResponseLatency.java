@@ -0,0 +1,189 @@
+package com.jacobwigent.wiretap.metrics;
+
+import com.jacobwigent.wiretap.serial.SerialByteListener;
+import com.jacobwigent.wiretap.serial.SerialWriteListener;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    Round-trip latency between commands written to a port and the device's replies.
+
+    Each write to the port marks a command as sent; the first complete incoming line that starts after it and
+    matches the response pattern (a regex, or a plain prefix) answers it, and the time from the start of the
+    write to the read that brought the reply's first byte goes into a histogram. Commands that go unanswered
+    for longer than the timeout are counted and dropped. Lines that don't match are ignored, so unsolicited
+    output between a command and its reply doesn't end the measurement.
+
+    Register on a session as both its write listener and a byte listener. By default both ends are stamped with
+    the System.nanoTime() the serial layer already takes at the port, which is monotonic and fine enough for
+    sub-millisecond replies; WALL_CLOCK stamps with System.currentTimeMillis() when the callbacks run instead,
+    for comparison with logs taken that way.
+ */
+public class ResponseLatency implements SerialWriteListener, SerialByteListener {
+
+    public enum Clock { NANO_TIME, WALL_CLOCK }
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final int MAX_LINE_CHARS = 4096;
+
+    private final Histogram latencies = new Histogram();
+    // Stamp of the last write of the command awaiting a reply
+    private final AtomicLong pending = new AtomicLong(NONE);
+    private final AtomicLong unanswered = new AtomicLong();
+
+    private volatile Clock clock = Clock.valueOf(
+            System.getProperty("wiretap.latencyClock", Clock.NANO_TIME.name()).toUpperCase(Locale.ROOT));
+    private volatile long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("wiretap.latencyTimeoutMillis", 5000));
+    private volatile Pattern pattern;
+    private volatile String prefix = "";
+    private volatile Histogram.Snapshot baseline = Histogram.Snapshot.EMPTY;
+    private volatile long unansweredBaseline = 0;
+
+    // Dispatcher-thread state for assembling incoming lines
+    private final StringBuilder line = new StringBuilder();
+    private long lineStart = NONE;
+    private Matcher matcher;
+
+    // Replies are lines matching this regex anywhere; replaces any prefix
+    public void setResponsePattern(Pattern pattern) {
+        this.pattern = pattern;
+        this.prefix = "";
+    }
+
+    // Replies are lines starting with this text ("" = any line); replaces any pattern
+    public void setResponsePrefix(String prefix) {
+        this.prefix = prefix;
+        this.pattern = null;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+        pending.set(NONE);
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    // How long a command may wait for its reply before it counts as unanswered
+    public void setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    // Starts a new measurement; any thread
+    public void reset() {
+        pending.set(NONE);
+        baseline = latencies.snapshot();
+        unansweredBaseline = unanswered.get();
+    }
+
+    // Latencies in nanoseconds since the last reset
+    public Histogram.Snapshot getSnapshot() {
+        return latencies.snapshot().minus(baseline);
+    }
+
+    public long getUnansweredCount() {
+        return unanswered.get() - unansweredBaseline;
+    }
+
+    @Override
+    public void onSerialWrite(byte[] data, int offset, int length, long timestampNanos) {
+        long now = clock == Clock.NANO_TIME ? timestampNanos : wallClockNanos();
+        long sent = pending.getAndSet(now);
+        if (sent != NONE && now - sent > timeoutNanos) {
+            unanswered.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        long now = clock == Clock.NANO_TIME ? timestampNanos : wallClockNanos();
+        for (int i = data.position(); i < data.limit(); i++) {
+            char c = (char) (data.get(i) & 0xff);
+            if (c == '\n') {
+                endLine();
+                continue;
+            }
+            if (lineStart == NONE) {
+                lineStart = now;
+            }
+            if (c != '\r' && line.length() < MAX_LINE_CHARS) {
+                line.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void onDisconnect() {
+        line.setLength(0);
+        lineStart = NONE;
+        pending.set(NONE);
+    }
+
+    private void endLine() {
+        long start = lineStart;
+        lineStart = NONE;
+        long sent = pending.get();
+        if (sent != NONE && start != NONE && start >= sent) {
+            if (start - sent > timeoutNanos) {
+                if (pending.compareAndSet(sent, NONE)) {
+                    unanswered.incrementAndGet();
+                }
+            } else if (isResponse() && pending.compareAndSet(sent, NONE)) {
+                latencies.record(start - sent);
+            }
+        }
+        line.setLength(0);
+    }
+
+    private boolean isResponse() {
+        Pattern p = pattern;
+        if (p == null) {
+            String text = prefix;
+            if (line.length() < text.length()) { return false; }
+            for (int i = 0; i < text.length(); i++) {
+                if (line.charAt(i) != text.charAt(i)) { return false; }
+            }
+            return true;
+        }
+        if (matcher == null || matcher.pattern() != p) {
+            matcher = p.matcher(line);
+        }
+        return matcher.reset(line).find();
+    }
+
+    private static long wallClockNanos() {
+        return System.currentTimeMillis() * 1_000_000L;
+    }
+
+    // One-line summary for the stats panel
+    public void appendSummary(StringBuilder sb) {
+        Histogram.Snapshot snapshot = getSnapshot();
+        sb.append("Response latency (").append(clock == Clock.NANO_TIME ? "nanoTime" : "wall clock").append("): ")
+                .append(snapshot.getCount()).append(" replies");
+        if (snapshot.getCount() > 0) {
+            sb.append(", p50 ");
+            appendMillis(sb, snapshot.getPercentile(0.5)).append(", p90 ");
+            appendMillis(sb, snapshot.getPercentile(0.9)).append(", p99 ");
+            appendMillis(sb, snapshot.getPercentile(0.99)).append(", max ");
+            appendMillis(sb, snapshot.getMax());
+        }
+        sb.append(", ").append(getUnansweredCount()).append(" unanswered\n");
+    }
+
+    // Nanoseconds as milliseconds with microsecond decimals
+    private static StringBuilder appendMillis(StringBuilder sb, long nanos) {
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        sb.append(micros / 1000).append('.');
+        if (fraction < 100) { sb.append('0'); }
+        if (fraction < 10) { sb.append('0'); }
+        return sb.append(fraction).append(" ms");
+    }
+}
@@ -0,0 +1,131 @@
+package com.jacobwigent.wiretap.plot;
+
+/*
+    Pulls numbers out of a line of text such as "t=123 v=4.02" or "12, -3.5, 1e3".
+    A number right after "name=" or "name:" is reported under that name; any other number is reported by its
+    position among the unnamed numbers on the line. Names are passed as ranges of the line, and numbers are
+    parsed in place, so scanning a line allocates nothing.
+ */
+public final class NumericFields {
+
+    public interface FieldSink {
+        // nameStart is -1 for an unnamed number, which is then identified by position (0, 1, ...)
+        void onField(CharSequence line, int nameStart, int nameEnd, int position, double value);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // End of the last number parsed by parseNumber, and its value
+    private int numberEnd;
+    private double numberValue;
+
+    public void scan(CharSequence line, FieldSink sink) {
+        int length = line.length();
+        int position = 0;
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (Character.isLetter(c) || c == '_') {
+                int nameStart = i;
+                while (i < length && isNameChar(line.charAt(i))) {
+                    i++;
+                }
+                int nameEnd = i;
+                int j = skipSpaces(line, i);
+                if (j < length && (line.charAt(j) == '=' || line.charAt(j) == ':')) {
+                    j = skipSpaces(line, j + 1);
+                    if (parseNumber(line, j)) {
+                        sink.onField(line, nameStart, nameEnd, -1, numberValue);
+                        i = numberEnd;
+                    }
+                }
+            } else if (parseNumber(line, i)) {
+                sink.onField(line, -1, -1, position++, numberValue);
+                i = numberEnd;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static int skipSpaces(CharSequence line, int i) {
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    // Decimal number with optional sign, fraction and exponent starting at i; sets numberEnd and numberValue
+    private boolean parseNumber(CharSequence line, int i) {
+        int length = line.length();
+        boolean negative = false;
+        if (i < length && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean any = false;
+        for (; i < length; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') { break; }
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) { digits++; }
+            } else {
+                scale++;
+            }
+        }
+        if (i < length && line.charAt(i) == '.') {
+            for (i++; i < length; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') { break; }
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) { digits++; }
+                    scale--;
+                }
+            }
+        }
+        if (!any) { return false; }
+
+        if (i + 1 < length && (line.charAt(i) == 'e' || line.charAt(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (line.charAt(j) == '-' || line.charAt(j) == '+') {
+                negativeExponent = line.charAt(j) == '-';
+                j++;
+            }
+            int exponent = 0;
+            int start = j;
+            while (j < length && line.charAt(j) >= '0' && line.charAt(j) <= '9') {
+                exponent = Math.min(exponent * 10 + (line.charAt(j) - '0'), 1000);
+                j++;
+            }
+            if (j > start) {
+                scale += negativeExponent ? -exponent : exponent;
+                i = j;
+            }
+        }
+
+        double value = mantissa;
+        if (scale != 0) {
+            int magnitude = Math.abs(scale);
+            double power = magnitude < POWERS_OF_TEN.length ? POWERS_OF_TEN[magnitude] : Math.pow(10, magnitude);
+            value = scale < 0 ? value / power : value * power;
+        }
+        numberValue = negative ? -value : value;
+        numberEnd = i;
+        return true;
+    }
+}
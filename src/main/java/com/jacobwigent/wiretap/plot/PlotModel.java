@@ -0,0 +1,175 @@
+package com.jacobwigent.wiretap.plot;
+
+import com.jacobwigent.wiretap.serial.LineSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Numeric channels parsed from a line stream. update() reads the lines added since the last call into a
+    reused buffer, scans them with NumericFields and appends every value to its channel's SampleRing, so
+    samples are never boxed. Channels are created the first time a name (or unnamed position) shows up.
+    Meant for the FX thread; the line source may be written concurrently.
+ */
+public class PlotModel implements NumericFields.FieldSink {
+
+    public static final int MAX_CHANNELS = 16;
+    public static final int DEFAULT_CAPACITY = 1 << 19;
+
+    public static class Channel {
+        private final String name;
+        private final SampleRing samples;
+        private volatile boolean visible = true;
+
+        private Channel(String name, int capacity) {
+            this.name = name;
+            this.samples = new SampleRing(capacity);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SampleRing getSamples() {
+            return samples;
+        }
+
+        public boolean isVisible() {
+            return visible;
+        }
+
+        public void setVisible(boolean visible) {
+            this.visible = visible;
+        }
+    }
+
+    private final int capacity;
+    private final List<Channel> channels = new ArrayList<>();
+    private final NumericFields fields = new NumericFields();
+    private final StringBuilder text = new StringBuilder();
+
+    private LineSource source;
+    private int nextLine = 0;
+    private long lineTime;
+
+    public PlotModel() {
+        this(Integer.getInteger("wiretap.plotSamples", DEFAULT_CAPACITY));
+    }
+
+    // Samples kept per channel
+    public PlotModel(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Plots the given lines from the oldest one still held
+    public void setSource(LineSource source) {
+        this.source = source;
+        nextLine = source == null ? 0 : source.getFirstLine();
+    }
+
+    public LineSource getSource() {
+        return source;
+    }
+
+    /*
+        Parses at most maxLines new lines and returns how many it read. The line still being received is left
+        for the next call so a number is never cut in half.
+     */
+    public int update(int maxLines) {
+        if (source == null) { return 0; }
+        int end = source.getLineCount() - 1;
+        // Lines evicted before we got to them are skipped
+        int line = Math.max(nextLine, source.getFirstLine());
+        int last = (int) Math.min(end, (long) line + maxLines);
+        for (; line < last; line++) {
+            text.setLength(0);
+            source.appendLineText(line, text);
+            lineTime = source.getLineTime(line);
+            fields.scan(text, this);
+        }
+        int read = Math.max(0, line - nextLine);
+        nextLine = Math.max(nextLine, line);
+        return read;
+    }
+
+    // True if there are complete lines update() hasn't read yet
+    public boolean hasPending() {
+        return source != null && source.getLineCount() - 1 > nextLine;
+    }
+
+    // Drops all samples and continues from the current end of the source
+    public void clear() {
+        for (Channel channel : channels) {
+            channel.samples.clear();
+        }
+        if (source != null) {
+            nextLine = Math.max(source.getLineCount() - 1, 0);
+        }
+    }
+
+    public List<Channel> getChannels() {
+        return Collections.unmodifiableList(channels);
+    }
+
+    // Newest sample time over all channels, or Long.MIN_VALUE if there are none
+    public long getLatestTime() {
+        long latest = Long.MIN_VALUE;
+        for (Channel channel : channels) {
+            SampleRing samples = channel.samples;
+            if (samples.getCount() > 0) {
+                latest = Math.max(latest, samples.getTime(samples.getCount() - 1));
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public void onField(CharSequence line, int nameStart, int nameEnd, int position, double value) {
+        Channel channel = nameStart < 0 ? findUnnamed(position) : findNamed(line, nameStart, nameEnd);
+        if (channel != null) {
+            channel.samples.add(lineTime, value);
+        }
+    }
+
+    private Channel findNamed(CharSequence line, int start, int end) {
+        int length = end - start;
+        for (Channel channel : channels) {
+            String name = channel.name;
+            if (name.length() != length) { continue; }
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = name.charAt(i) == line.charAt(start + i);
+            }
+            if (same) { return channel; }
+        }
+        if (channels.size() >= MAX_CHANNELS) { return null; }
+        return add(line.subSequence(start, end).toString());
+    }
+
+    // Unnamed numbers are "#1", "#2", ... by their position on the line
+    private Channel findUnnamed(int position) {
+        for (Channel channel : channels) {
+            String name = channel.name;
+            if (name.charAt(0) == '#' && isPosition(name, position + 1)) { return channel; }
+        }
+        if (channels.size() >= MAX_CHANNELS) { return null; }
+        return add("#" + (position + 1));
+    }
+
+    private static boolean isPosition(String name, int number) {
+        int value = 0;
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') { return false; }
+            value = value * 10 + (c - '0');
+        }
+        return value == number;
+    }
+
+    private Channel add(String name) {
+        Channel channel = new Channel(name, capacity);
+        channels.add(channel);
+        return channel;
+    }
+}
@@ -0,0 +1,104 @@
+package com.jacobwigent.wiretap.plot;
+
+/*
+    Fixed-capacity history of one channel: values and their timestamps in parallel primitive arrays, indexed
+    by absolute sample number. The oldest samples are overwritten once it is full. Timestamps must not
+    decrease, which lets the plotter find a time window with a binary search.
+    Not thread-safe; the plot model fills and reads it on the FX thread.
+ */
+public class SampleRing {
+
+    private final double[] values;
+    private final long[] times;
+    private final int mask;
+    private long count = 0;
+
+    // Capacity is rounded up to a power of two
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        values = new double[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    public void add(long timeNanos, double value) {
+        int slot = (int) (count & mask);
+        times[slot] = timeNanos;
+        values[slot] = value;
+        count++;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    // Samples ever added; the ring holds [getFirst(), getCount())
+    public long getCount() {
+        return count;
+    }
+
+    public long getFirst() {
+        return Math.max(0, count - values.length);
+    }
+
+    public double getValue(long sample) {
+        return values[(int) (sample & mask)];
+    }
+
+    public long getTime(long sample) {
+        return times[(int) (sample & mask)];
+    }
+
+    // First held sample at or after the given time, or getCount() if there is none
+    public long indexAtOrAfter(long timeNanos) {
+        long low = getFirst();
+        long high = count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (times[(int) (mid & mask)] < timeNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+        Min/max decimation: splits [fromNanos, toNanos) into min.length equal columns and stores the smallest
+        and largest value that falls into each one. Empty columns get NaN. Each sample in the window is
+        visited once, so drawing cost follows the pixel width and not the sample rate.
+        Returns the number of samples in the window.
+     */
+    public long decimate(long fromNanos, long toNanos, double[] min, double[] max) {
+        int columns = min.length;
+        for (int c = 0; c < columns; c++) {
+            min[c] = Double.NaN;
+            max[c] = Double.NaN;
+        }
+        long span = toNanos - fromNanos;
+        if (span <= 0 || columns == 0) { return 0; }
+
+        long start = indexAtOrAfter(fromNanos);
+        long sample = start;
+        for (; sample < count; sample++) {
+            int slot = (int) (sample & mask);
+            long time = times[slot];
+            if (time >= toNanos) { break; }
+            int column = (int) ((time - fromNanos) * columns / span);
+            double value = values[slot];
+            // NaN compares false, so the first sample of a column always lands
+            if (!(value >= min[column])) {
+                min[column] = value;
+            }
+            if (!(value <= max[column])) {
+                max[column] = value;
+            }
+        }
+        return sample - start;
+    }
+}
@@ -0,0 +1,76 @@
+package com.jacobwigent.wiretap.protocol;
+
+/*
+    Consistent Overhead Byte Stuffing, with 0x00 as the frame delimiter.
+    Each code byte n is followed by n - 1 data bytes and, unless n is 0xFF, an implied zero. The implied zero
+    is held back until the next code byte arrives, since the one after the last block is not part of the frame.
+ */
+public class CobsDecoder implements FrameDecoder {
+
+    private static final byte[] ZERO = { 0 };
+
+    private final FrameSink sink;
+
+    // Data bytes left in the current block; -1 while the next byte is a code byte
+    private int remaining = -1;
+    private boolean pendingZero = false;
+    private int frameBytes = 0;
+
+    public CobsDecoder(FrameSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (remaining > 0) {
+                // Copy as much of the block as this read holds, stopping at a delimiter
+                int start = i;
+                int limit = Math.min(end, i + remaining);
+                while (i < limit && data[i] != 0) {
+                    i++;
+                }
+                if (i > start) {
+                    sink.onFrameData(data, start, i - start);
+                    remaining -= i - start;
+                    frameBytes += i - start;
+                }
+                if (i < end && data[i] == 0 && remaining > 0) {
+                    // Delimiter inside a block: the frame was cut short
+                    sink.onFrameError();
+                    frameBytes = 0;
+                    remaining = -1;
+                    pendingZero = false;
+                    i++;
+                }
+                continue;
+            }
+
+            int b = data[i++] & 0xff;
+            if (b == 0) {
+                if (remaining == 0 || frameBytes > 0) {
+                    sink.onFrameEnd();
+                }
+                remaining = -1;
+                pendingZero = false;
+                frameBytes = 0;
+                continue;
+            }
+            if (pendingZero) {
+                sink.onFrameData(ZERO, 0, 1);
+                frameBytes++;
+            }
+            remaining = b - 1;
+            pendingZero = b != 0xff;
+        }
+    }
+
+    @Override
+    public void reset() {
+        remaining = -1;
+        pendingZero = false;
+        frameBytes = 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.jacobwigent.wiretap.protocol;
+
+// Every frame is exactly frameLength bytes, e.g. fixed-size telemetry records
+public class FixedLengthDecoder implements FrameDecoder {
+
+    private final FrameSink sink;
+    private final int frameLength;
+    private int filled = 0;
+
+    public FixedLengthDecoder(int frameLength, FrameSink sink) {
+        if (frameLength <= 0) {
+            throw new IllegalArgumentException("Frame length must be positive: " + frameLength);
+        }
+        this.frameLength = frameLength;
+        this.sink = sink;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    @Override
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int n = Math.min(end - i, frameLength - filled);
+            sink.onFrameData(data, i, n);
+            i += n;
+            filled += n;
+            if (filled == frameLength) {
+                sink.onFrameEnd();
+                filled = 0;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        filled = 0;
+    }
+}
@@ -0,0 +1,25 @@
+package com.jacobwigent.wiretap.protocol;
+
+/*
+    A protocol stage between the raw byte stream and the line store: turns arbitrary reads into frames.
+    Decoders are streaming and keep no more state than the protocol needs, so a frame may span any number of
+    reads. Frame bytes go to the sink as slices of the input (or of small constant arrays for escaped bytes)
+    and never through a per-frame buffer. Decoders are used from a single thread.
+ */
+public interface FrameDecoder {
+
+    interface FrameSink {
+        // Part of the current frame's payload; a frame may arrive in any number of pieces
+        void onFrameData(byte[] data, int offset, int length);
+
+        void onFrameEnd();
+
+        // The current frame was malformed or cut short and ends here; any data already delivered is incomplete
+        default void onFrameError() {}
+    }
+
+    void feed(byte[] data, int offset, int length);
+
+    // Drops any partial frame
+    void reset();
+}
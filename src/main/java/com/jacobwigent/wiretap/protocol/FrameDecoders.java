@@ -0,0 +1,48 @@
+package com.jacobwigent.wiretap.protocol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// The built-in decoders by display name, for the protocol selector
+public final class FrameDecoders {
+
+    // Plain text split into lines; not a frame decoder
+    public static final String TEXT_LINES = "Text lines";
+
+    private static final Map<String, Function<FrameDecoder.FrameSink, FrameDecoder>> PRESETS = new LinkedHashMap<>();
+
+    static {
+        PRESETS.put("COBS", CobsDecoder::new);
+        PRESETS.put("SLIP", SlipDecoder::new);
+        PRESETS.put("Fixed 8 bytes", sink -> new FixedLengthDecoder(8, sink));
+        PRESETS.put("Fixed 16 bytes", sink -> new FixedLengthDecoder(16, sink));
+        PRESETS.put("Fixed 32 bytes", sink -> new FixedLengthDecoder(32, sink));
+        PRESETS.put("Length u8", sink -> new LengthPrefixedDecoder(1, false, sink));
+        PRESETS.put("Length u16 LE", sink -> new LengthPrefixedDecoder(2, false, sink));
+        PRESETS.put("Length u16 BE", sink -> new LengthPrefixedDecoder(2, true, sink));
+        PRESETS.put("Length u32 LE", sink -> new LengthPrefixedDecoder(4, false, sink));
+        PRESETS.put("Length u32 BE", sink -> new LengthPrefixedDecoder(4, true, sink));
+    }
+
+    private FrameDecoders() {}
+
+    public static List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        names.add(TEXT_LINES);
+        names.addAll(PRESETS.keySet());
+        return names;
+    }
+
+    // Factory for the named decoder, or null for text lines
+    public static Function<FrameDecoder.FrameSink, FrameDecoder> forName(String name) {
+        if (name == null || TEXT_LINES.equals(name)) { return null; }
+        Function<FrameDecoder.FrameSink, FrameDecoder> factory = PRESETS.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown protocol: " + name);
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,79 @@
+package com.jacobwigent.wiretap.protocol;
+
+/*
+    Frames that start with an unsigned 1, 2 or 4 byte payload length, big or little endian.
+    The header is collected across reads byte by byte; the payload is then passed through as slices.
+    A length above maxLength means we are out of sync: the frame is reported as an error and the next byte is
+    read as a new header.
+ */
+public class LengthPrefixedDecoder implements FrameDecoder {
+
+    public static final int DEFAULT_MAX_LENGTH = 1 << 16;
+
+    private final FrameSink sink;
+    private final int headerBytes;
+    private final boolean bigEndian;
+    private final long maxLength;
+
+    private int headerFilled = 0;
+    private long header = 0;
+    // Payload bytes still to come; -1 while reading the header
+    private long remaining = -1;
+
+    public LengthPrefixedDecoder(int headerBytes, boolean bigEndian, FrameSink sink) {
+        this(headerBytes, bigEndian, DEFAULT_MAX_LENGTH, sink);
+    }
+
+    public LengthPrefixedDecoder(int headerBytes, boolean bigEndian, long maxLength, FrameSink sink) {
+        if (headerBytes != 1 && headerBytes != 2 && headerBytes != 4) {
+            throw new IllegalArgumentException("Length header must be 1, 2 or 4 bytes: " + headerBytes);
+        }
+        this.headerBytes = headerBytes;
+        this.bigEndian = bigEndian;
+        this.maxLength = maxLength;
+        this.sink = sink;
+    }
+
+    @Override
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (remaining < 0) {
+                long b = data[i++] & 0xff;
+                header = bigEndian ? (header << 8) | b : header | (b << (8 * headerFilled));
+                if (++headerFilled < headerBytes) { continue; }
+
+                long payload = header;
+                headerFilled = 0;
+                header = 0;
+                if (payload > maxLength) {
+                    sink.onFrameError();
+                    continue;
+                }
+                if (payload == 0) {
+                    sink.onFrameEnd();
+                    continue;
+                }
+                remaining = payload;
+                continue;
+            }
+
+            int n = (int) Math.min(end - i, remaining);
+            sink.onFrameData(data, i, n);
+            i += n;
+            remaining -= n;
+            if (remaining == 0) {
+                sink.onFrameEnd();
+                remaining = -1;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        headerFilled = 0;
+        header = 0;
+        remaining = -1;
+    }
+}
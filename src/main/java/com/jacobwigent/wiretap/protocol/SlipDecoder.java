@@ -0,0 +1,75 @@
+package com.jacobwigent.wiretap.protocol;
+
+/*
+    SLIP (RFC 1055): frames end with 0xC0, and 0xC0 / 0xDB inside a frame are sent as 0xDB 0xDC / 0xDB 0xDD.
+    Runs of plain bytes are passed through as slices; only escaped bytes come from constant arrays.
+    Empty frames, which senders use to flush line noise, are skipped.
+ */
+public class SlipDecoder implements FrameDecoder {
+
+    private static final byte END = (byte) 0xC0;
+    private static final byte ESC = (byte) 0xDB;
+    private static final byte ESC_END = (byte) 0xDC;
+    private static final byte ESC_ESC = (byte) 0xDD;
+    private static final byte[] END_BYTES = { END };
+    private static final byte[] ESC_BYTES = { ESC };
+
+    private final FrameSink sink;
+
+    private boolean escaped = false;
+    private boolean inFrame = false;
+
+    public SlipDecoder(FrameSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (escaped) {
+                escaped = false;
+                start = i + 1;
+                if (b == ESC_END) {
+                    sink.onFrameData(END_BYTES, 0, 1);
+                } else if (b == ESC_ESC) {
+                    sink.onFrameData(ESC_BYTES, 0, 1);
+                } else if (b == END) {
+                    sink.onFrameError();
+                    inFrame = false;
+                    continue;
+                } else {
+                    // RFC 1055 leaves a bad escape as the byte itself
+                    sink.onFrameData(data, i, 1);
+                }
+                inFrame = true;
+                continue;
+            }
+            if (b != END && b != ESC) { continue; }
+
+            if (i > start) {
+                sink.onFrameData(data, start, i - start);
+                inFrame = true;
+            }
+            start = i + 1;
+            if (b == ESC) {
+                escaped = true;
+            } else if (inFrame) {
+                sink.onFrameEnd();
+                inFrame = false;
+            }
+        }
+        if (start < end) {
+            sink.onFrameData(data, start, end - start);
+            inFrame = true;
+        }
+    }
+
+    @Override
+    public void reset() {
+        escaped = false;
+        inFrame = false;
+    }
+}
@@ -0,0 +1,228 @@
+package com.jacobwigent.wiretap.script;
+
+import com.jacobwigent.wiretap.serial.PortSession;
+import com.jacobwigent.wiretap.serial.SerialByteListener;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+
+/*
+    Runs a SendScript against an open session on its own thread. Sends only queue bytes on the session's
+    writer, so waits are measured from when a send was queued, not from when it left the port. A send waits
+    while the writer is more than MAX_QUEUED_BYTES behind, so a rate-limited send loop is paced by the port
+    instead of filling the writer's queue.
+
+    Received bytes are collected as ISO-8859-1 text (one char per byte) for expect steps. Each send clears
+    what was collected, so an expect only sees the response to the last send, and a match consumes everything
+    up to its end so consecutive expects walk forward through a response. Rate and inter-byte delay changes
+    made by the script are undone when it ends.
+ */
+public class ScriptRunner implements SerialByteListener {
+
+    // Received text kept for expect steps; the oldest half is dropped beyond this
+    private static final int MAX_RECEIVED_CHARS = 1 << 16;
+    private static final long MAX_QUEUED_BYTES = 64 << 10;
+    private static final long QUEUE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SendScript script;
+    private final PortSession session;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+    private final StringBuilder received = new StringBuilder();
+
+    private volatile Thread thread;
+    private volatile boolean cancelled = false;
+    private volatile boolean disconnected = false;
+    private volatile int currentLine = 0;
+
+    public ScriptRunner(SendScript script, PortSession session) {
+        this.script = script;
+        this.session = session;
+    }
+
+    // Completes normally when the script ends, exceptionally on a failed expect, disconnect or cancel
+    public CompletableFuture<Void> start() {
+        if (thread != null) {
+            throw new IllegalStateException("Script already started");
+        }
+        thread = new Thread(this::run, "script-runner");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Thread t = thread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return thread != null && !result.isDone();
+    }
+
+    // Script line of the step being run
+    public int getCurrentLine() {
+        return currentLine;
+    }
+
+    public CompletableFuture<Void> getResult() {
+        return result;
+    }
+
+    private void run() {
+        long rate = session.getWriteRate();
+        long byteDelay = session.getInterByteDelayNanos();
+        Throwable failure = null;
+        session.addByteListener(this);
+        try {
+            execute();
+        } catch (Throwable t) {
+            failure = cancelled ? new CancellationException("Script cancelled") : t;
+        } finally {
+            session.removeByteListener(this);
+            session.setWriteRate(rate);
+            session.setInterByteDelay(byteDelay, TimeUnit.NANOSECONDS);
+        }
+        if (failure == null) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private void execute() throws InterruptedException {
+        SendScript.Step[] steps = script.getSteps().toArray(new SendScript.Step[0]);
+        // Remaining iterations of each open repeat, indexed by the REPEAT step
+        long[] remaining = new long[steps.length];
+        int pc = 0;
+        while (pc < steps.length) {
+            checkRunning();
+            SendScript.Step step = steps[pc];
+            currentLine = step.getLineNumber();
+            switch (step.getKind()) {
+                case SEND:
+                    send(step);
+                    pc++;
+                    break;
+                case WAIT:
+                    sleep(step.getValue());
+                    pc++;
+                    break;
+                case EXPECT:
+                    expect(step);
+                    pc++;
+                    break;
+                case REPEAT:
+                    if (step.getValue() == 0) {
+                        pc = step.getMatch() + 1;
+                    } else {
+                        remaining[pc] = step.getValue();
+                        pc++;
+                    }
+                    break;
+                case END: {
+                    int repeat = step.getMatch();
+                    pc = --remaining[repeat] > 0 ? repeat + 1 : pc + 1;
+                    break;
+                }
+                case RATE:
+                    session.setWriteRate(step.getValue());
+                    pc++;
+                    break;
+                case BYTE_DELAY:
+                    session.setInterByteDelay(step.getValue(), TimeUnit.NANOSECONDS);
+                    pc++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled step " + step.getKind());
+            }
+        }
+    }
+
+    private void send(SendScript.Step step) throws InterruptedException {
+        byte[] data = step.getData();
+        long queued;
+        while (session.isOpen() && (queued = session.getQueuedWriteBytes()) > 0
+                && queued + data.length > MAX_QUEUED_BYTES) {
+            checkRunning();
+            LockSupport.parkNanos(this, QUEUE_POLL_NANOS);
+        }
+        synchronized (received) {
+            received.setLength(0);
+        }
+        if (!session.send(data)) {
+            throw new IllegalStateException("Line " + step.getLineNumber() + ": send failed, the port is "
+                    + (session.isOpen() ? "backed up" : "closed"));
+        }
+    }
+
+    private void expect(SendScript.Step step) throws InterruptedException {
+        long deadline = System.nanoTime() + step.getValue();
+        synchronized (received) {
+            Matcher matcher = step.getPattern().matcher(received);
+            while (true) {
+                checkRunning();
+                matcher.reset(received);
+                if (matcher.find()) {
+                    received.delete(0, matcher.end());
+                    return;
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new IllegalStateException("Line " + step.getLineNumber() + ": no match for "
+                            + step.getText() + " within " + TimeUnit.NANOSECONDS.toMillis(step.getValue()) + " ms");
+                }
+                TimeUnit.NANOSECONDS.timedWait(received, left);
+            }
+        }
+    }
+
+    private void sleep(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            checkRunning();
+            LockSupport.parkNanos(this, left);
+        }
+    }
+
+    private void checkRunning() throws InterruptedException {
+        if (cancelled || Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (disconnected) {
+            throw new IllegalStateException("Line " + currentLine + ": port disconnected");
+        }
+    }
+
+    @Override
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        synchronized (received) {
+            if (received.length() + data.remaining() > MAX_RECEIVED_CHARS) {
+                received.delete(0, Math.min(received.length(), MAX_RECEIVED_CHARS / 2 + data.remaining()));
+            }
+            for (int i = data.position(); i < data.limit(); i++) {
+                received.append((char) (data.get(i) & 0xff));
+            }
+            received.notifyAll();
+        }
+    }
+
+    @Override
+    public void onDisconnect() {
+        disconnected = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        synchronized (received) {
+            received.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.jacobwigent.wiretap.script;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+    A parsed send sequence. One command per line, # starts a comment:
+
+        send "AT\r\n"          text with \r \n \t \0 \\ \" and \xHH escapes
+        send hex 01 02 ff      raw bytes
+        wait 250ms             pause (us, ms or s; a bare number is ms)
+        expect "OK" 2s         wait until the text arrives after the last send, or fail after the timeout
+        expect /OK|ERROR/ 2s   the same with a regex
+        repeat 10 ... end      run the enclosed commands N times; repeats nest
+        rate 960               cap the write rate in bytes per second (0 = unlimited)
+        bytedelay 2ms          pause after every byte (0 = off)
+
+    Parsing checks everything up front, so a script never fails halfway on a typo.
+ */
+public class SendScript {
+
+    public enum Kind { SEND, WAIT, EXPECT, REPEAT, END, RATE, BYTE_DELAY }
+
+    public static final long DEFAULT_EXPECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public static final class Step {
+        private final Kind kind;
+        private final int lineNumber;
+        private final byte[] data;
+        private final Pattern pattern;
+        private final String text;
+        private final long value;
+        // REPEAT: index of its END; END: index of its REPEAT
+        private int match = -1;
+
+        private Step(Kind kind, int lineNumber, byte[] data, Pattern pattern, long value) {
+            this(kind, lineNumber, data, pattern, null, value);
+        }
+
+        private Step(Kind kind, int lineNumber, byte[] data, Pattern pattern, String text, long value) {
+            this.kind = kind;
+            this.lineNumber = lineNumber;
+            this.data = data;
+            this.pattern = pattern;
+            this.text = text;
+            this.value = value;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        // SEND: the bytes to write
+        public byte[] getData() {
+            return data;
+        }
+
+        // EXPECT: what to wait for
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        // EXPECT: the pattern as written in the script, quotes or slashes included
+        public String getText() {
+            return text;
+        }
+
+        // WAIT / EXPECT / BYTE_DELAY: nanoseconds; REPEAT: count; RATE: bytes per second
+        public long getValue() {
+            return value;
+        }
+
+        public int getMatch() {
+            return match;
+        }
+    }
+
+    private final List<Step> steps;
+
+    private SendScript(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    // Throws IllegalArgumentException naming the line of the first error
+    public static SendScript parse(String source) {
+        List<Step> steps = new ArrayList<>();
+        Deque<Integer> open = new ArrayDeque<>();
+        String[] lines = source.split("\r?\n|\r");
+        for (int i = 0; i < lines.length; i++) {
+            int lineNumber = i + 1;
+            String line = stripComment(lines[i]).trim();
+            if (line.isEmpty()) { continue; }
+            try {
+                Step step = parseLine(line, lineNumber);
+                if (step.kind == Kind.REPEAT) {
+                    open.push(steps.size());
+                } else if (step.kind == Kind.END) {
+                    if (open.isEmpty()) {
+                        throw new IllegalArgumentException("end without repeat");
+                    }
+                    int repeat = open.pop();
+                    steps.get(repeat).match = steps.size();
+                    step.match = repeat;
+                }
+                steps.add(step);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (!open.isEmpty()) {
+            int line = steps.get(open.peek()).lineNumber;
+            throw new IllegalArgumentException("Line " + line + ": repeat without end");
+        }
+        return new SendScript(steps);
+    }
+
+    private static Step parseLine(String line, int lineNumber) {
+        int space = line.indexOf(' ');
+        String command = (space < 0 ? line : line.substring(0, space)).toLowerCase(Locale.ROOT);
+        String rest = space < 0 ? "" : line.substring(space + 1).trim();
+        switch (command) {
+            case "send":
+                if (rest.toLowerCase(Locale.ROOT).startsWith("hex ")) {
+                    return new Step(Kind.SEND, lineNumber, parseHex(rest.substring(4)), null, 0);
+                }
+                return new Step(Kind.SEND, lineNumber, unescape(quoted(rest)), null, 0);
+            case "wait":
+                return new Step(Kind.WAIT, lineNumber, null, null, parseDuration(rest));
+            case "expect":
+                return parseExpect(rest, lineNumber);
+            case "repeat": {
+                long count = parseCount(rest);
+                return new Step(Kind.REPEAT, lineNumber, null, null, count);
+            }
+            case "end":
+                return new Step(Kind.END, lineNumber, null, null, 0);
+            case "rate":
+                return new Step(Kind.RATE, lineNumber, null, null, parseCount(rest));
+            case "bytedelay":
+                return new Step(Kind.BYTE_DELAY, lineNumber, null, null, parseDuration(rest));
+            default:
+                throw new IllegalArgumentException("unknown command '" + command + "'");
+        }
+    }
+
+    private static Step parseExpect(String rest, int lineNumber) {
+        if (rest.isEmpty()) {
+            throw new IllegalArgumentException("expect needs a \"text\" or /regex/");
+        }
+        char delimiter = rest.charAt(0);
+        if (delimiter != '"' && delimiter != '/') {
+            throw new IllegalArgumentException("expect needs a \"text\" or /regex/");
+        }
+        int close = closingIndex(rest, delimiter);
+        String body = rest.substring(1, close);
+        String timeout = rest.substring(close + 1).trim();
+        Pattern pattern;
+        try {
+            pattern = delimiter == '/'
+                    ? Pattern.compile(body)
+                    : Pattern.compile(Pattern.quote(new String(unescape(body), StandardCharsets.ISO_8859_1)));
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("invalid regex: " + e.getDescription());
+        }
+        long nanos = timeout.isEmpty() ? DEFAULT_EXPECT_TIMEOUT_NANOS : parseDuration(timeout);
+        return new Step(Kind.EXPECT, lineNumber, null, pattern, rest.substring(0, close + 1), nanos);
+    }
+
+    private static String stripComment(String line) {
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == '#' && !inQuotes) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String quoted(String text) {
+        if (text.length() < 2 || text.charAt(0) != '"') {
+            throw new IllegalArgumentException("expected \"text\" or hex bytes");
+        }
+        int close = closingIndex(text, '"');
+        if (!text.substring(close + 1).trim().isEmpty()) {
+            throw new IllegalArgumentException("unexpected text after the closing quote");
+        }
+        return text.substring(1, close);
+    }
+
+    private static int closingIndex(String text, char delimiter) {
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == delimiter) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("missing closing " + delimiter);
+    }
+
+    // Text with C-style escapes to bytes; characters above 0xFF are sent as UTF-8
+    public static byte[] unescape(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\') {
+                if (c < 0x100) {
+                    out.write(c);
+                } else {
+                    byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                    out.write(encoded, 0, encoded.length);
+                }
+                continue;
+            }
+            if (++i == text.length()) {
+                throw new IllegalArgumentException("dangling \\");
+            }
+            char escape = text.charAt(i);
+            switch (escape) {
+                case 'r': out.write('\r'); break;
+                case 'n': out.write('\n'); break;
+                case 't': out.write('\t'); break;
+                case '0': out.write(0); break;
+                case 'x':
+                    if (i + 2 >= text.length()) {
+                        throw new IllegalArgumentException("\\x needs two hex digits");
+                    }
+                    out.write(hexByte(text.charAt(i + 1), text.charAt(i + 2)));
+                    i += 2;
+                    break;
+                default:
+                    out.write(escape);
+                    break;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Hex byte pairs, optionally separated by spaces, commas or 0x prefixes: "01 02 ff", "0x01,0x02", "0102ff"
+    public static byte[] parseHex(String text) {
+        String digits = text.replaceAll("0[xX]", "").replaceAll("[\\s,]", "");
+        if (digits.isEmpty() || digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex needs whole bytes");
+        }
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) hexByte(digits.charAt(2 * i), digits.charAt(2 * i + 1));
+        }
+        return bytes;
+    }
+
+    private static int hexByte(char high, char low) {
+        int h = Character.digit(high, 16);
+        int l = Character.digit(low, 16);
+        if (h < 0 || l < 0) {
+            throw new IllegalArgumentException("invalid hex byte '" + high + low + "'");
+        }
+        return h << 4 | l;
+    }
+
+    private static long parseCount(String text) {
+        try {
+            long count = Long.parseLong(text.trim());
+            if (count < 0) {
+                throw new IllegalArgumentException("expected a non-negative number");
+            }
+            return count;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a number, got '" + text + "'");
+        }
+    }
+
+    // "250ms", "2s", "500us" or a bare number of milliseconds, to nanoseconds
+    static long parseDuration(String text) {
+        String t = text.trim().toLowerCase(Locale.ROOT);
+        TimeUnit unit = TimeUnit.MILLISECONDS;
+        if (t.endsWith("us")) {
+            unit = TimeUnit.MICROSECONDS;
+            t = t.substring(0, t.length() - 2);
+        } else if (t.endsWith("ms")) {
+            t = t.substring(0, t.length() - 2);
+        } else if (t.endsWith("s")) {
+            unit = TimeUnit.SECONDS;
+            t = t.substring(0, t.length() - 1);
+        }
+        try {
+            double amount = Double.parseDouble(t.trim());
+            if (amount < 0) {
+                throw new IllegalArgumentException("durations can't be negative");
+            }
+            return (long) (amount * unit.toNanos(1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected a duration like 250ms or 2s, got '" + text + "'");
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.jacobwigent.wiretap.search;
+
+import com.jacobwigent.wiretap.serial.LineSource;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+    View over another LineSource that only shows the lines passing a LineFilter.
+    It keeps an index of matching source line numbers rather than copies of the lines. New lines are evaluated
+    incrementally in sync(); when the filter changes, the history is re-evaluated in parallel on a fork-join pool
+    while the view keeps showing the previous result, and the new index is swapped in on the next sync().
+
+    Everything here is meant for the FX thread; only the re-evaluation itself runs elsewhere, and it reads just
+    the source lines that existed when setFilter() was called.
+ */
+public class FilteredLineSource implements LineSource {
+
+    private static final int LINES_PER_TASK = 4096;
+
+    private final LineSource source;
+    private final ForkJoinPool pool;
+
+    private LineFilter filter;
+    private LineFilter.Evaluator evaluator;
+    private int[] matches = new int[1024];
+    private int matchCount = 0;
+    // View line of matches[0]; matches of lines the source has evicted are dropped from the front
+    private int matchBase = 0;
+    private int firstMatch = 0;
+    // Source lines below this have been evaluated; the last source line is still growing and is evaluated each sync
+    private int evaluated = 0;
+    private boolean tailVisible = false;
+    // Lowest source line rewritten since setFilter(); the rebuild may have read it before the rewrite
+    private int rewrittenDuringRebuild = Integer.MAX_VALUE;
+
+    private volatile Rebuild pending;
+    private volatile int generation = 0;
+
+    public FilteredLineSource(LineSource source) {
+        this(source, ForkJoinPool.commonPool());
+    }
+
+    public FilteredLineSource(LineSource source, ForkJoinPool pool) {
+        this.source = source;
+        this.pool = pool;
+    }
+
+    public LineSource getSource() {
+        return source;
+    }
+
+    public LineFilter getFilter() {
+        return filter;
+    }
+
+    /*
+        Re-evaluates the source against a new filter (null shows every line). The returned future completes once
+        the new index is ready; it is applied on the next sync().
+     */
+    public CompletableFuture<Void> setFilter(LineFilter newFilter) {
+        int thisGeneration = ++generation;
+        rewrittenDuringRebuild = Integer.MAX_VALUE;
+        int start = source.getFirstLine();
+        int end = Math.max(start, source.getLineCount() - 1);
+        return CompletableFuture.runAsync(() -> {
+            int[] hits = newFilter == null ? null : pool.invoke(new EvaluateTask(newFilter, start, end));
+            if (generation == thisGeneration) {
+                pending = new Rebuild(newFilter, hits, end);
+            }
+        }, pool);
+    }
+
+    @Override
+    public void sync() {
+        source.sync();
+        int rewritten = source.getRewrittenLine();
+        rewrittenDuringRebuild = Math.min(rewrittenDuringRebuild, rewritten);
+        Rebuild rebuild = pending;
+        if (rebuild != null) {
+            pending = null;
+            filter = rebuild.filter;
+            evaluator = filter == null ? null : filter.newEvaluator();
+            matches = rebuild.hits == null ? new int[1024] : rebuild.hits;
+            matchCount = rebuild.hits == null ? 0 : rebuild.hits.length;
+            matchBase = 0;
+            firstMatch = 0;
+            evaluated = rebuild.end;
+            rewritten = rewrittenDuringRebuild;
+            rewrittenDuringRebuild = Integer.MAX_VALUE;
+        }
+        if (filter == null) { return; }
+        if (rewritten < evaluated) {
+            rewind(rewritten);
+        }
+
+        int sourceFirst = source.getFirstLine();
+        dropEvicted(sourceFirst);
+        int complete = Math.max(0, source.getLineCount() - 1);
+        for (int line = Math.max(evaluated, sourceFirst); line < complete; line++) {
+            if (evaluator.accept(source, line)) {
+                add(line);
+            }
+        }
+        evaluated = Math.max(evaluated, complete);
+        tailVisible = complete < source.getLineCount() && evaluator.accept(source, complete);
+    }
+
+    // Forgets the evaluation of every source line from this one on, so sync() evaluates them again
+    private void rewind(int sourceLine) {
+        int index = Arrays.binarySearch(matches, 0, matchCount, sourceLine);
+        matchCount = index >= 0 ? index : -index - 1;
+        evaluated = sourceLine;
+    }
+
+    private void dropEvicted(int sourceFirst) {
+        int first = firstMatch - matchBase;
+        while (first < matchCount && matches[first] < sourceFirst) {
+            first++;
+        }
+        firstMatch = matchBase + first;
+        // Shift the live matches down once the dead prefix is the larger part, so the index stays bounded
+        if (first > 1024 && first > matchCount / 2) {
+            System.arraycopy(matches, first, matches, 0, matchCount - first);
+            matchCount -= first;
+            matchBase += first;
+        }
+    }
+
+    private void add(int line) {
+        if (matchCount == matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(1024, matchCount * 2));
+        }
+        matches[matchCount++] = line;
+    }
+
+    /*
+        Maps a line of this view to the line of the underlying source, or -1 if the view has no such line
+        (e.g. a stale index from before compacted matches were dropped).
+     */
+    public int getSourceLine(int line) {
+        if (filter == null) { return line; }
+        int index = line - matchBase;
+        if (index < 0 || index > matchCount || (index == matchCount && !tailVisible)) { return -1; }
+        return index < matchCount ? matches[index] : evaluated;
+    }
+
+    // Maps a source line to its line in this view, or -1 if it is filtered out
+    public int getViewLine(int sourceLine) {
+        if (filter == null) { return sourceLine; }
+        if (sourceLine == evaluated) {
+            return tailVisible ? matchBase + matchCount : -1;
+        }
+        int index = Arrays.binarySearch(matches, 0, matchCount, sourceLine);
+        return index >= 0 ? matchBase + index : -1;
+    }
+
+    @Override
+    public int getLineCount() {
+        if (filter == null) { return source.getLineCount(); }
+        return matchBase + matchCount + (tailVisible ? 1 : 0);
+    }
+
+    @Override
+    public int getFirstLine() {
+        return filter == null ? source.getFirstLine() : firstMatch;
+    }
+
+    @Override
+    public int getLineLength(int line) {
+        int sourceLine = getSourceLine(line);
+        return sourceLine < 0 ? 0 : source.getLineLength(sourceLine);
+    }
+
+    @Override
+    public long getLineTime(int line) {
+        int sourceLine = getSourceLine(line);
+        return sourceLine < 0 ? 0 : source.getLineTime(sourceLine);
+    }
+
+    @Override
+    public String getLineText(int line, int fromColumn, int maxChars) {
+        int sourceLine = getSourceLine(line);
+        return sourceLine < 0 ? "" : source.getLineText(sourceLine, fromColumn, maxChars);
+    }
+
+    @Override
+    public void appendLineText(int line, StringBuilder sb) {
+        int sourceLine = getSourceLine(line);
+        if (sourceLine >= 0) {
+            source.appendLineText(sourceLine, sb);
+        }
+    }
+
+    private static class Rebuild {
+        final LineFilter filter;
+        final int[] hits;
+        final int end;
+
+        Rebuild(LineFilter filter, int[] hits, int end) {
+            this.filter = filter;
+            this.hits = hits;
+            this.end = end;
+        }
+    }
+
+    private class EvaluateTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final LineFilter filter;
+        private final int from;
+        private final int to;
+
+        EvaluateTask(LineFilter filter, int from, int to) {
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > LINES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                EvaluateTask left = new EvaluateTask(filter, from, mid);
+                left.fork();
+                int[] right = new EvaluateTask(filter, mid, to).compute();
+                int[] leftHits = left.join();
+                int[] merged = Arrays.copyOf(leftHits, leftHits.length + right.length);
+                System.arraycopy(right, 0, merged, leftHits.length, right.length);
+                return merged;
+            }
+            LineFilter.Evaluator local = filter.newEvaluator();
+            int[] hits = new int[64];
+            int count = 0;
+            for (int line = from; line < to; line++) {
+                if (local.accept(source, line)) {
+                    if (count == hits.length) {
+                        hits = Arrays.copyOf(hits, count * 2);
+                    }
+                    hits[count++] = line;
+                }
+            }
+            return Arrays.copyOf(hits, count);
+        }
+    }
+}
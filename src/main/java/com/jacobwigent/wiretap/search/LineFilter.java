@@ -0,0 +1,126 @@
+package com.jacobwigent.wiretap.search;
+
+import com.jacobwigent.wiretap.serial.LineSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    Compiled line predicate: a line passes if it matches any include pattern (when there are any), starts with
+    any of the prefixes, contains any of the level tags, and matches none of the exclude patterns.
+
+    Filter expressions are whitespace-separated terms:
+        text      include regex
+        -text     exclude regex
+        ^text     prefix
+        @TAG      level tag, e.g. @ERROR or @WARN (case-insensitive)
+ */
+public class LineFilter {
+
+    private final Pattern[] include;
+    private final Pattern[] exclude;
+    private final String[] prefixes;
+    private final String[] levels;
+
+    public LineFilter(List<Pattern> include, List<Pattern> exclude, List<String> prefixes, List<String> levels) {
+        this.include = include.toArray(new Pattern[0]);
+        this.exclude = exclude.toArray(new Pattern[0]);
+        this.prefixes = prefixes.toArray(new String[0]);
+        this.levels = levels.toArray(new String[0]);
+    }
+
+    // Throws PatternSyntaxException if a regex term is invalid
+    public static LineFilter parse(String expression) {
+        List<Pattern> include = new ArrayList<>();
+        List<Pattern> exclude = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        List<String> levels = new ArrayList<>();
+        for (String term : expression.trim().split("\\s+")) {
+            if (term.length() < 2) {
+                if (!term.isEmpty()) { include.add(Pattern.compile(Pattern.quote(term))); }
+                continue;
+            }
+            switch (term.charAt(0)) {
+                case '-':
+                    exclude.add(Pattern.compile(term.substring(1)));
+                    break;
+                case '^':
+                    prefixes.add(term.substring(1));
+                    break;
+                case '@':
+                    levels.add(term.substring(1));
+                    break;
+                default:
+                    include.add(Pattern.compile(term));
+                    break;
+            }
+        }
+        return new LineFilter(include, exclude, prefixes, levels);
+    }
+
+    public Evaluator newEvaluator() {
+        return new Evaluator();
+    }
+
+    // Per-thread matching state; evaluators are not thread-safe but a filter can hand out any number of them
+    public class Evaluator {
+        private final Matcher[] includeMatchers = matchers(include);
+        private final Matcher[] excludeMatchers = matchers(exclude);
+        private final StringBuilder sb = new StringBuilder();
+
+        public boolean accept(LineSource source, int line) {
+            sb.setLength(0);
+            source.appendLineText(line, sb);
+            return accept(sb);
+        }
+
+        public boolean accept(CharSequence text) {
+            if (prefixes.length > 0 && !startsWithAny(text)) { return false; }
+            if (levels.length > 0 && !containsAnyLevel(text)) { return false; }
+            if (includeMatchers.length > 0 && !findAny(includeMatchers, text)) { return false; }
+            return !findAny(excludeMatchers, text);
+        }
+    }
+
+    private boolean startsWithAny(CharSequence text) {
+        for (String prefix : prefixes) {
+            if (text.length() < prefix.length()) { continue; }
+            int i = 0;
+            while (i < prefix.length() && text.charAt(i) == prefix.charAt(i)) {
+                i++;
+            }
+            if (i == prefix.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsAnyLevel(CharSequence text) {
+        for (String level : levels) {
+            if (SearchQuery.indexOf(text, level, false) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean findAny(Matcher[] matchers, CharSequence text) {
+        for (Matcher matcher : matchers) {
+            if (matcher.reset(text).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Matcher[] matchers(Pattern[] patterns) {
+        Matcher[] matchers = new Matcher[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            matchers[i] = patterns[i].matcher("");
+        }
+        return matchers;
+    }
+}
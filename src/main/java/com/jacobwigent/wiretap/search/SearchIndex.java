@@ -0,0 +1,232 @@
+package com.jacobwigent.wiretap.search;
+
+import com.jacobwigent.wiretap.serial.LineStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/*
+    Incremental trigram index over a LineStore.
+    Lines are grouped into blocks of BLOCK_LINES, and each block keeps a bit signature of the (lower-cased)
+    trigrams it contains. A background thread follows the store and signs blocks as lines are completed.
+    Queries only scan blocks whose signature holds every trigram of the query's required literal, and do so in
+    parallel on a fork-join pool; lines not yet indexed are always scanned.
+ */
+public class SearchIndex {
+
+    private static final int BLOCK_LINES = 128;
+    private static final int SIGNATURE_BITS = 8192;
+    private static final int SIGNATURE_WORDS = SIGNATURE_BITS / 64;
+    private static final int BLOCKS_PER_TASK = 32;
+    private static final long INDEX_INTERVAL_MILLIS = 50;
+
+    private final LineStore lines;
+    private final ForkJoinPool pool;
+    private final Thread indexer;
+
+    private volatile long[][] signatures = new long[256][];
+    private volatile int indexedLines = 0;
+    private int evictedBlocks = 0;
+    private volatile boolean running = true;
+
+    public SearchIndex(LineStore lines) {
+        this(lines, ForkJoinPool.commonPool());
+    }
+
+    public SearchIndex(LineStore lines, ForkJoinPool pool) {
+        this.lines = lines;
+        this.pool = pool;
+        this.indexer = new Thread(this::indexLoop, "search-indexer");
+        this.indexer.setDaemon(true);
+        this.indexer.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    public void start() {
+        indexer.start();
+    }
+
+    public void stop() {
+        running = false;
+        indexer.interrupt();
+    }
+
+    public int getIndexedLineCount() {
+        return indexedLines;
+    }
+
+    private void indexLoop() {
+        StringBuilder sb = new StringBuilder();
+        while (running) {
+            // The last line may still be growing, so only complete lines are signed
+            int complete = lines.getLineCount() - 1;
+            int line = Math.max(indexedLines, lines.getFirstLine());
+            dropEvictedBlocks();
+            while (line < complete && running) {
+                int block = line / BLOCK_LINES;
+                long[] signature = signatureFor(block);
+                sb.setLength(0);
+                lines.appendLineText(line, sb);
+                sign(sb, signature);
+                line++;
+                if (line % BLOCK_LINES == 0 || line == complete) {
+                    indexedLines = line;
+                }
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(INDEX_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Frees the signatures of blocks whose lines have all been evicted from the store
+    private void dropEvictedBlocks() {
+        long[][] current = signatures;
+        int firstLive = Math.min(lines.getFirstLine() / BLOCK_LINES, current.length);
+        while (evictedBlocks < firstLive) {
+            current[evictedBlocks++] = null;
+        }
+    }
+
+    private long[] signatureFor(int block) {
+        long[][] current = signatures;
+        if (block >= current.length) {
+            current = Arrays.copyOf(current, Math.max(block + 1, current.length * 2));
+            signatures = current;
+        }
+        if (current[block] == null) {
+            current[block] = new long[SIGNATURE_WORDS];
+        }
+        return current[block];
+    }
+
+    private static void sign(CharSequence text, long[] signature) {
+        int n = text.length();
+        if (n < 3) { return; }
+        char a = Character.toLowerCase(text.charAt(0));
+        char b = Character.toLowerCase(text.charAt(1));
+        for (int i = 2; i < n; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int bit = trigramBit(a, b, c);
+            signature[bit >>> 6] |= 1L << bit;
+            a = b;
+            b = c;
+        }
+    }
+
+    private static int trigramBit(char a, char b, char c) {
+        int h = (a * 31 + b) * 31 + c;
+        h ^= h >>> 13;
+        h *= 0x5bd1e995;
+        h ^= h >>> 15;
+        return h & (SIGNATURE_BITS - 1);
+    }
+
+    private static long[] querySignature(String literal) {
+        if (literal.length() < 3) { return null; }
+        long[] signature = new long[SIGNATURE_WORDS];
+        sign(literal, signature);
+        return signature;
+    }
+
+    // Runs the query on the index's fork-join pool; at most maxHits line numbers are collected
+    public CompletableFuture<SearchResult> search(SearchQuery query, int maxHits) {
+        return CompletableFuture.supplyAsync(() -> execute(query, maxHits), pool);
+    }
+
+    private SearchResult execute(SearchQuery query, int maxHits) {
+        long start = System.nanoTime();
+        int lineCount = lines.getLineCount();
+        int first = lines.getFirstLine();
+        int indexed = Math.max(first, Math.min(indexedLines, lineCount));
+        long[][] blockSignatures = signatures;
+        long[] required = querySignature(query.getRequiredLiteral());
+
+        // Candidate line ranges: pruned indexed blocks, then everything not yet indexed
+        List<int[]> ranges = new ArrayList<>();
+        int blocks = (indexed + BLOCK_LINES - 1) / BLOCK_LINES;
+        for (int block = first / BLOCK_LINES; block < blocks; block++) {
+            long[] signature = block < blockSignatures.length ? blockSignatures[block] : null;
+            if (required == null || contains(signature, required)) {
+                int from = Math.max(first, block * BLOCK_LINES);
+                ranges.add(new int[] { from, Math.min((block + 1) * BLOCK_LINES, indexed) });
+            }
+        }
+        if (indexed < lineCount) {
+            ranges.add(new int[] { indexed, lineCount });
+        }
+
+        int[] hits = pool.invoke(new ScanTask(query, ranges, 0, ranges.size()));
+        boolean truncated = hits.length > maxHits;
+        if (truncated) {
+            hits = Arrays.copyOf(hits, maxHits);
+        }
+        return new SearchResult(query, hits, truncated, System.nanoTime() - start);
+    }
+
+    private static boolean contains(long[] signature, long[] required) {
+        if (signature == null) { return true; }
+        for (int i = 0; i < SIGNATURE_WORDS; i++) {
+            if ((signature[i] & required[i]) != required[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class ScanTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final SearchQuery query;
+        private final List<int[]> ranges;
+        private final int from;
+        private final int to;
+
+        ScanTask(SearchQuery query, List<int[]> ranges, int from, int to) {
+            this.query = query;
+            this.ranges = ranges;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > BLOCKS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                ScanTask left = new ScanTask(query, ranges, from, mid);
+                left.fork();
+                int[] right = new ScanTask(query, ranges, mid, to).compute();
+                int[] leftHits = left.join();
+                int[] merged = Arrays.copyOf(leftHits, leftHits.length + right.length);
+                System.arraycopy(right, 0, merged, leftHits.length, right.length);
+                return merged;
+            }
+
+            Matcher matcher = query.newMatcher();
+            StringBuilder sb = new StringBuilder();
+            int[] hits = new int[16];
+            int count = 0;
+            for (int r = from; r < to; r++) {
+                int[] range = ranges.get(r);
+                for (int line = range[0]; line < range[1]; line++) {
+                    sb.setLength(0);
+                    lines.appendLineText(line, sb);
+                    if (query.matches(sb, matcher)) {
+                        if (count == hits.length) {
+                            hits = Arrays.copyOf(hits, count * 2);
+                        }
+                        hits[count++] = line;
+                    }
+                }
+            }
+            return Arrays.copyOf(hits, count);
+        }
+    }
+}
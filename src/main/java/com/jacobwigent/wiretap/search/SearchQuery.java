@@ -0,0 +1,197 @@
+package com.jacobwigent.wiretap.search;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+    A compiled substring or regex query.
+    For index pruning it also exposes a literal that every match must contain: the text itself for substring
+    queries, or the longest mandatory literal run of a regex (none if the regex has top-level alternation).
+ */
+public class SearchQuery {
+
+    private final String text;
+    private final boolean regex;
+    private final boolean caseSensitive;
+    private final Pattern pattern;
+    private final String requiredLiteral;
+
+    public SearchQuery(String text, boolean regex, boolean caseSensitive) {
+        this.text = text;
+        this.regex = regex;
+        this.caseSensitive = caseSensitive;
+        if (regex) {
+            this.pattern = Pattern.compile(text, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            this.requiredLiteral = extractLiteral(text);
+        } else {
+            this.pattern = null;
+            this.requiredLiteral = text;
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return regex;
+    }
+
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    // Lower-cased literal that every matching line contains, or "" if none is known
+    public String getRequiredLiteral() {
+        return requiredLiteral.toLowerCase(Locale.ROOT);
+    }
+
+    // Each thread matching lines needs its own Matcher
+    public Matcher newMatcher() {
+        return pattern == null ? null : pattern.matcher("");
+    }
+
+    public boolean matches(CharSequence line, Matcher matcher) {
+        if (matcher != null) {
+            return matcher.reset(line).find();
+        }
+        return indexOf(line, text, caseSensitive) >= 0;
+    }
+
+    static int indexOf(CharSequence line, String literal, boolean caseSensitive) {
+        int n = literal.length();
+        int last = line.length() - n;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < n && equal(line.charAt(i + j), literal.charAt(j), caseSensitive)) {
+                j++;
+            }
+            if (j == n) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equal(char a, char b, boolean caseSensitive) {
+        if (a == b) { return true; }
+        return !caseSensitive && Character.toLowerCase(a) == Character.toLowerCase(b);
+    }
+
+    /*
+        Longest run of characters every match must contain, for pruning with the trigram index. Anything that
+        isn't plainly literal (classes, groups, escapes and their arguments, quantifier braces) ends the run, so
+        the result may be shorter than it could be but never requires text a match can lack.
+     */
+    private static String extractLiteral(String regex) {
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            char literal = 0;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(++i);
+                if (!Character.isLetterOrDigit(next)) {
+                    literal = next;
+                } else {
+                    i = skipEscapeArgument(regex, i);
+                }
+            } else if (c == '[') {
+                // Skip the whole character class
+                i++;
+                if (i < regex.length() && regex.charAt(i) == ']') { i++; }
+                while (i < regex.length() && regex.charAt(i) != ']') {
+                    if (regex.charAt(i) == '\\') { i++; }
+                    i++;
+                }
+            } else if (c == '{') {
+                // Skip the whole quantifier; the atom before it was already handled
+                i = closingBrace(regex, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|') {
+                if (depth == 0) { return ""; }
+            } else if (".*+?}^$".indexOf(c) < 0) {
+                literal = c;
+            }
+
+            boolean optional = i + 1 < regex.length() && isOptionalQuantifier(regex, i + 1);
+            if (literal != 0 && !optional && depth == 0) {
+                run.append(literal);
+            }
+            // A repeated atom is still required once, but whatever follows it isn't adjacent to it
+            boolean repeated = i + 1 < regex.length() && "+{".indexOf(regex.charAt(i + 1)) >= 0;
+            if (literal == 0 || optional || depth != 0 || repeated) {
+                if (run.length() > best.length()) {
+                    best = run.toString();
+                }
+                run.setLength(0);
+            }
+        }
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    // True if the quantifier at i allows zero occurrences: *, ? or {0...}
+    private static boolean isOptionalQuantifier(String regex, int i) {
+        char c = regex.charAt(i);
+        if (c == '*' || c == '?') { return true; }
+        if (c != '{') { return false; }
+        int j = i + 1;
+        while (j < regex.length() && regex.charAt(j) == ' ') { j++; }
+        int min = 0;
+        boolean digits = false;
+        while (j < regex.length() && Character.isDigit(regex.charAt(j))) {
+            min = Math.min(1, min * 10 + regex.charAt(j) - '0');
+            digits = true;
+            j++;
+        }
+        return !digits || min == 0;
+    }
+
+    // Index of the '}' closing the brace group at i, or the end of the pattern
+    private static int closingBrace(String regex, int i) {
+        int close = regex.indexOf('}', i);
+        return close < 0 ? regex.length() - 1 : close;
+    }
+
+    // Skips what an escape letter or digit at i takes as its argument, e.g. \p{Alpha}, \x41, \x{263A}, \k<name>
+    private static int skipEscapeArgument(String regex, int i) {
+        char escape = regex.charAt(i);
+        int n = regex.length();
+        switch (escape) {
+            case 'p':
+            case 'P':
+            case 'N':
+            case 'x':
+                if (i + 1 < n && regex.charAt(i + 1) == '{') {
+                    return closingBrace(regex, i + 1);
+                }
+                return Math.min(n - 1, i + (escape == 'x' ? 2 : escape == 'N' ? 0 : 1));
+            case 'u':
+                return Math.min(n - 1, i + 4);
+            case 'c':
+                return Math.min(n - 1, i + 1);
+            case 'k':
+                if (i + 1 < n && regex.charAt(i + 1) == '<') {
+                    int close = regex.indexOf('>', i);
+                    return close < 0 ? n - 1 : close;
+                }
+                return i;
+            case 'Q': {
+                // Quoted text is literal, but keeping it out of the run is the safe, simple choice
+                int close = regex.indexOf("\\E", i);
+                return close < 0 ? n - 1 : close + 1;
+            }
+            default:
+                // Octal escapes and back references continue with digits
+                if (Character.isDigit(escape)) {
+                    while (i + 1 < n && Character.isDigit(regex.charAt(i + 1))) { i++; }
+                }
+                return i;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.jacobwigent.wiretap.search;
+
+public class SearchResult {
+
+    private final SearchQuery query;
+    private final int[] lines;
+    private final boolean truncated;
+    private final long elapsedNanos;
+
+    SearchResult(SearchQuery query, int[] lines, boolean truncated, long elapsedNanos) {
+        this.query = query;
+        this.lines = lines;
+        this.truncated = truncated;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public SearchQuery getQuery() {
+        return query;
+    }
+
+    // Matching line numbers in ascending order
+    public int[] getLines() {
+        return lines;
+    }
+
+    public int getHitCount() {
+        return lines.length;
+    }
+
+    // True if the hit limit was reached and later matches were not collected
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000L;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jacobwigent.wiretap.serial;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+public class JSerialCommBackend implements PortBackend {
+
+    private static final int READ_TIMEOUT_MILLIS = 100;
+
+    private final SerialPort port;
+
+    public JSerialCommBackend(SerialPort port) {
+        this.port = port;
+    }
+
+    public SerialPort getSerialPort() {
+        return port;
+    }
+
+    @Override
+    public String getSystemPortName() {
+        return port.getSystemPortName();
+    }
+
+    @Override
+    public String getDescriptivePortName() {
+        return port.getDescriptivePortName();
+    }
+
+    @Override
+    public boolean openPort() {
+        if (!port.openPort()) { return false; }
+        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_TIMEOUT_MILLIS, 0);
+        return true;
+    }
+
+    @Override
+    public boolean closePort() {
+        return port.closePort();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return port.isOpen();
+    }
+
+    @Override
+    public int getBaudRate() {
+        return port.getBaudRate();
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+        port.setBaudRate(baudRate);
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, int offset, int maxLength) {
+        return port.readBytes(buffer, maxLength, offset);
+    }
+
+    @Override
+    public int writeBytes(byte[] buffer, int offset, int length) {
+        return port.writeBytes(buffer, length, offset);
+    }
+}
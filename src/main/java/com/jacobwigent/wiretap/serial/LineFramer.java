@@ -0,0 +1,179 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.nio.ByteBuffer;
+
+/*
+    Streaming line splitter over raw bytes.
+    Every chunk is scanned once for the delimiter and handed to the sink as slices of the original array, so
+    several lines in one read, lines split across reads and a CRLF split between two reads are all framed
+    correctly without building intermediate Strings.
+ */
+public class LineFramer {
+
+    public enum Delimiter {
+        // LF, CR or CRLF, whichever the device sends
+        ANY, LF, CR, CRLF, CUSTOM
+    }
+
+    public interface LineSink {
+        // Part of the current line; a line may arrive in any number of pieces
+        void onLineData(byte[] data, int offset, int length);
+
+        void onLineEnd();
+    }
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] CR_BYTES = { CR };
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final LineSink sink;
+    private Delimiter delimiter;
+    private byte delimiterByte;
+
+    // CRLF only: a chunk ended with CR and we don't know yet whether LF follows
+    private boolean pendingCR = false;
+    // ANY only: the previous byte was a CR, so an LF right after it belongs to the same line break
+    private boolean afterCR = false;
+    private byte[] scratch;
+
+    public LineFramer(LineSink sink) {
+        this(Delimiter.ANY, LF, sink);
+    }
+
+    public LineFramer(Delimiter delimiter, byte customByte, LineSink sink) {
+        this.sink = sink;
+        setDelimiter(delimiter, customByte);
+    }
+
+    public void setDelimiter(Delimiter delimiter, byte customByte) {
+        this.delimiter = delimiter;
+        switch (delimiter) {
+            case CR:
+                delimiterByte = CR;
+                break;
+            case CUSTOM:
+                delimiterByte = customByte;
+                break;
+            default:
+                delimiterByte = LF;
+                break;
+        }
+        pendingCR = false;
+        afterCR = false;
+    }
+
+    public Delimiter getDelimiter() {
+        return delimiter;
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        if (delimiter == Delimiter.CRLF) {
+            feedCRLF(data, offset, length);
+            return;
+        }
+        if (delimiter == Delimiter.ANY) {
+            feedAny(data, offset, length);
+            return;
+        }
+
+        byte target = delimiterByte;
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == target) {
+                if (i > start) {
+                    sink.onLineData(data, start, i - start);
+                }
+                sink.onLineEnd();
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            sink.onLineData(data, start, end - start);
+        }
+    }
+
+    public void feed(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int n = Math.min(scratch.length, buffer.remaining());
+            buffer.get(scratch, 0, n);
+            feed(scratch, 0, n);
+        }
+    }
+
+    private void feedAny(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b != LF && b != CR) {
+                afterCR = false;
+                continue;
+            }
+            if (i > start) {
+                sink.onLineData(data, start, i - start);
+            }
+            start = i + 1;
+            if (b == LF && afterCR) {
+                afterCR = false;
+                continue;
+            }
+            afterCR = b == CR;
+            sink.onLineEnd();
+        }
+        if (start < end) {
+            sink.onLineData(data, start, end - start);
+        }
+    }
+
+    private void feedCRLF(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int start = offset;
+        if (pendingCR && length > 0) {
+            pendingCR = false;
+            if (data[offset] == LF) {
+                sink.onLineEnd();
+                start = offset + 1;
+            } else {
+                sink.onLineData(CR_BYTES, 0, 1);
+            }
+        }
+
+        for (int i = start; i < end; i++) {
+            if (data[i] != CR) { continue; }
+            if (i + 1 == end) {
+                // Hold the CR back until the next chunk tells us what it was
+                if (i > start) {
+                    sink.onLineData(data, start, i - start);
+                }
+                pendingCR = true;
+                return;
+            }
+            if (data[i + 1] == LF) {
+                if (i > start) {
+                    sink.onLineData(data, start, i - start);
+                }
+                sink.onLineEnd();
+                start = i + 2;
+                i++;
+            }
+        }
+        if (start < end) {
+            sink.onLineData(data, start, end - start);
+        }
+    }
+
+    public void reset() {
+        pendingCR = false;
+        afterCR = false;
+    }
+}
@@ -0,0 +1,37 @@
+package com.jacobwigent.wiretap.serial;
+
+// Read side of a line collection, as consumed by the monitor
+public interface LineSource {
+
+    // Brings a derived view up to date with its sources; called on the FX thread before each redraw
+    default void sync() {}
+
+    int getLineCount();
+
+    // Lowest line the last sync() replaced in place, or Integer.MAX_VALUE if it only added lines
+    default int getRewrittenLine() {
+        return Integer.MAX_VALUE;
+    }
+
+    // Oldest line that can still be read; sources with bounded retention evict the lines below it
+    default int getFirstLine() {
+        return 0;
+    }
+
+    int getLineLength(int line);
+
+    // Read timestamp (System.nanoTime) of the chunk that started the line
+    long getLineTime(int line);
+
+    // Returns at most maxChars of the line starting at column fromColumn
+    String getLineText(int line, int fromColumn, int maxChars);
+
+    default String getLineText(int line) {
+        return getLineText(line, 0, Integer.MAX_VALUE);
+    }
+
+    // Appends the whole line, letting callers that scan many lines reuse one buffer
+    default void appendLineText(int line, StringBuilder sb) {
+        sb.append(getLineText(line));
+    }
+}
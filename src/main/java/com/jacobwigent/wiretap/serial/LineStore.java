@@ -0,0 +1,310 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Flat line index: all line text lives in one paged char arena and each line is just its start
+    offset into it. Views read any line by index without per-line objects, which is what lets the monitor
+    hold millions of lines.
+
+    Retention is bounded by line count, characters and age. Both the pages and the per-line arrays are rings
+    indexed by absolute position, so dropping the oldest line is O(1) and its page is reused for new text
+    instead of being reallocated. Line numbers never shift: evicted lines simply fall below getFirstLine().
+
+    A single thread appends. Other threads may read concurrently; everything between getFirstLine() and
+    getLineCount() is safely published by the volatile writes at the end of each append. A line can be evicted
+    while it is being read, so text reads are validated afterwards and come back empty if that happened.
+ */
+public class LineStore implements LineSource {
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    public interface EvictionListener {
+        // Called on the appending thread while the line can still be read
+        void onEvict(LineStore lines, int line);
+    }
+
+    private volatile char[][] pages = new char[16][];
+    private volatile long[] lineStarts = new long[1024];
+    private volatile long[] lineTimes = new long[1024];
+
+    private volatile long length = 0;
+    private volatile int lineCount = 0;
+    private volatile int firstLine = 0;
+    private volatile int allocatedPages = 0;
+
+    private int maxLines = 0;
+    private long maxChars = 0;
+    private long maxAgeNanos = 0;
+    private volatile EvictionListener evictionListener;
+
+    // Writer-only state
+    private long writePage = -1;
+    private char[] writeChars;
+
+    // Keeps at most this many lines (0 = unlimited)
+    public void setMaxLines(int maxLines) {
+        this.maxLines = maxLines;
+    }
+
+    // Keeps at most this many characters of text (0 = unlimited)
+    public void setMaxChars(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    // Drops lines this much older than the newest one (0 = never)
+    public void setMaxAge(long age, TimeUnit unit) {
+        this.maxAgeNanos = unit.toNanos(age);
+    }
+
+    // Receives every line just before it is evicted, e.g. to spill it to disk
+    public void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    public void startLine(long timestampNanos) {
+        int count = lineCount;
+        long[] starts = lineStarts;
+        long[] times = lineTimes;
+        if (count - firstLine == starts.length) {
+            starts = grow(starts, firstLine, count);
+            times = grow(times, firstLine, count);
+            lineStarts = starts;
+            lineTimes = times;
+        }
+        int mask = starts.length - 1;
+        starts[count & mask] = length;
+        times[count & mask] = timestampNanos;
+        lineCount = count + 1;
+        evict(timestampNanos);
+    }
+
+    // Appends text to the last line, starting one if the store is empty
+    public void append(CharSequence text) {
+        if (lineCount == 0) {
+            startLine(System.nanoTime());
+        }
+        long end = length;
+        int n = text.length();
+        for (int i = 0; i < n; ) {
+            char[] page = writablePage(end);
+            int pageOffset = (int) (end & PAGE_MASK);
+            int count = Math.min(n - i, PAGE_SIZE - pageOffset);
+            for (int j = 0; j < count; j++) {
+                page[pageOffset + j] = text.charAt(i + j);
+            }
+            i += count;
+            end += count;
+        }
+        length = end;
+        if (maxChars > 0) {
+            evict(0);
+        }
+    }
+
+    public void append(char[] chars, int offset, int length) {
+        if (lineCount == 0) {
+            startLine(System.nanoTime());
+        }
+        long position = this.length;
+        for (int i = 0; i < length; ) {
+            char[] page = writablePage(position);
+            int pageOffset = (int) (position & PAGE_MASK);
+            int count = Math.min(length - i, PAGE_SIZE - pageOffset);
+            System.arraycopy(chars, offset + i, page, pageOffset, count);
+            i += count;
+            position += count;
+        }
+        this.length = position;
+        if (maxChars > 0) {
+            evict(0);
+        }
+    }
+
+    /*
+        Appends raw bytes to the last line; ASCII is widened in place, anything else goes through the default
+        charset. Byte streams that may split multi-byte characters should go through a StreamingDecoder instead.
+     */
+    public void append(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] < 0) {
+                append(new String(data, offset, length));
+                return;
+            }
+        }
+        if (lineCount == 0) {
+            startLine(System.nanoTime());
+        }
+        long position = this.length;
+        for (int i = offset; i < end; ) {
+            char[] page = writablePage(position);
+            int pageOffset = (int) (position & PAGE_MASK);
+            int count = Math.min(end - i, PAGE_SIZE - pageOffset);
+            for (int j = 0; j < count; j++) {
+                page[pageOffset + j] = (char) data[i + j];
+            }
+            i += count;
+            position += count;
+        }
+        this.length = position;
+        if (maxChars > 0) {
+            evict(0);
+        }
+    }
+
+    /*
+        Drops the oldest lines while any limit is exceeded. The last line is still being written and is never
+        evicted. newestTime is the timestamp of the line just started, or 0 to skip the age check.
+     */
+    private void evict(long newestTime) {
+        int first = firstLine;
+        int last = lineCount - 1;
+        long[] starts = lineStarts;
+        long[] times = lineTimes;
+        int mask = starts.length - 1;
+        EvictionListener listener = evictionListener;
+        while (first < last) {
+            boolean over = (maxLines > 0 && last + 1 - first > maxLines)
+                    || (maxChars > 0 && length - starts[first & mask] > maxChars)
+                    || (maxAgeNanos > 0 && newestTime != 0 && newestTime - times[first & mask] > maxAgeNanos);
+            if (!over) { break; }
+            if (listener != null) {
+                listener.onEvict(this, first);
+            }
+            first++;
+        }
+        if (first != firstLine) {
+            firstLine = first;
+        }
+    }
+
+    private static long[] grow(long[] ring, int from, int to) {
+        long[] grown = new long[ring.length * 2];
+        int oldMask = ring.length - 1;
+        int newMask = grown.length - 1;
+        for (int line = from; line < to; line++) {
+            grown[line & newMask] = ring[line & oldMask];
+        }
+        return grown;
+    }
+
+    // Page that holds the given position, reusing the array of an evicted page where possible
+    private char[] writablePage(long position) {
+        long page = position >>> PAGE_BITS;
+        if (page == writePage) {
+            return writeChars;
+        }
+        char[][] current = pages;
+        long firstPage = getLineStart(firstLine) >>> PAGE_BITS;
+        if (page - firstPage >= current.length) {
+            char[][] grown = new char[current.length * 2][];
+            for (long p = firstPage; p < page; p++) {
+                grown[(int) (p & (grown.length - 1))] = current[(int) (p & (current.length - 1))];
+            }
+            current = grown;
+            pages = grown;
+        }
+        int slot = (int) (page & (current.length - 1));
+        if (current[slot] == null) {
+            current[slot] = new char[PAGE_SIZE];
+            allocatedPages++;
+        }
+        writePage = page;
+        writeChars = current[slot];
+        return writeChars;
+    }
+
+    @Override
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    // Oldest line still held; lines below it have been evicted
+    @Override
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    // Approximate heap held by the text pages and line arrays
+    public long getMemoryUsage() {
+        return (long) allocatedPages * PAGE_SIZE * Character.BYTES
+                + (long) lineStarts.length * 2 * Long.BYTES
+                + (long) pages.length * 8;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLineStart(int line) {
+        long[] starts = lineStarts;
+        return starts[line & (starts.length - 1)];
+    }
+
+    public long getLineEnd(int line) {
+        int count = lineCount;
+        if (line + 1 < count) {
+            return getLineStart(line + 1);
+        }
+        return length;
+    }
+
+    @Override
+    public long getLineTime(int line) {
+        long[] times = lineTimes;
+        return times[line & (times.length - 1)];
+    }
+
+    @Override
+    public int getLineLength(int line) {
+        if (line < firstLine) { return 0; }
+        return (int) (getLineEnd(line) - getLineStart(line));
+    }
+
+    @Override
+    public String getLineText(int line, int fromColumn, int maxChars) {
+        if (line < firstLine) { return ""; }
+        long end = getLineEnd(line);
+        long start = getLineStart(line) + fromColumn;
+        if (start >= end) { return ""; }
+        int count = (int) Math.min(end - start, maxChars);
+        StringBuilder sb = new StringBuilder(count);
+        appendChars(sb, start, count);
+        return isEvicted(line) ? "" : sb.toString();
+    }
+
+    @Override
+    public void appendLineText(int line, StringBuilder sb) {
+        if (line < firstLine) { return; }
+        int mark = sb.length();
+        long start = getLineStart(line);
+        appendChars(sb, start, (int) (getLineEnd(line) - start));
+        if (isEvicted(line)) {
+            sb.setLength(mark);
+        }
+    }
+
+    // Validates a read: true if the line was evicted (and its page possibly reused) while we were reading it
+    private boolean isEvicted(int line) {
+        VarHandle.acquireFence();
+        return line < firstLine;
+    }
+
+    private void appendChars(StringBuilder sb, long position, int count) {
+        char[][] current = pages;
+        int mask = current.length - 1;
+        while (count > 0) {
+            char[] page = current[(int) ((position >>> PAGE_BITS) & mask)];
+            if (page == null) { return; }
+            int pageOffset = (int) (position & PAGE_MASK);
+            int n = Math.min(count, PAGE_SIZE - pageOffset);
+            sb.append(page, pageOffset, n);
+            position += n;
+            count -= n;
+        }
+    }
+}
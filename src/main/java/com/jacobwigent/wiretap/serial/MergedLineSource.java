@@ -0,0 +1,168 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.util.List;
+
+/*
+    Time-ordered view over the lines of several sessions, each tagged with its port name.
+    Every sync() merges only the lines that appeared since the previous one, ordered by the read timestamp
+    of the chunk that started them, so the cost of keeping the view current follows the data rate.
+    Like the stores themselves, the merged entries are kept in rings so evicted lines drop out in O(1).
+
+    A port whose dispatcher ran behind can deliver lines older than ones already merged from other ports.
+    Up to REMERGE_WINDOW merged entries newer than such a line are taken back off the tail and merged again, so
+    the view stays in time order; a line later than that is appended where it arrives. The view lines that
+    changed are reported through getRewrittenLine().
+ */
+public class MergedLineSource implements LineSource {
+
+    private static final int REMERGE_WINDOW = 4096;
+
+    private final LineStore[] sources;
+    private final String[] tags;
+    private final int[] merged;
+    private final int[] available;
+
+    // Rings indexed by view line
+    private volatile int[] entrySource = new int[1024];
+    private volatile int[] entryLine = new int[1024];
+    private volatile int count = 0;
+    // Entries below this point at lines their source has evicted
+    private volatile int firstEntry = 0;
+    private int rewritten = Integer.MAX_VALUE;
+
+    public MergedLineSource(List<LineStore> sources, List<String> names) {
+        this.sources = sources.toArray(new LineStore[0]);
+        this.tags = new String[names.size()];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = "[" + names.get(i) + "] ";
+        }
+        this.merged = new int[this.sources.length];
+        this.available = new int[this.sources.length];
+    }
+
+    @Override
+    public void sync() {
+        for (int s = 0; s < sources.length; s++) {
+            available[s] = sources[s].getLineCount();
+            // Lines evicted before they were merged are skipped
+            merged[s] = Math.max(merged[s], sources[s].getFirstLine());
+        }
+        dropEvicted();
+        rewritten = Integer.MAX_VALUE;
+        unmergeLateTail();
+        while (true) {
+            int next = -1;
+            long nextTime = Long.MAX_VALUE;
+            for (int s = 0; s < sources.length; s++) {
+                if (merged[s] < available[s]) {
+                    long time = sources[s].getLineTime(merged[s]);
+                    if (next < 0 || time < nextTime) {
+                        next = s;
+                        nextTime = time;
+                    }
+                }
+            }
+            if (next < 0) { return; }
+            add(next, merged[next]++);
+        }
+    }
+
+    private void unmergeLateTail() {
+        long oldest = Long.MAX_VALUE;
+        for (int s = 0; s < sources.length; s++) {
+            if (merged[s] < available[s]) {
+                oldest = Math.min(oldest, sources[s].getLineTime(merged[s]));
+            }
+        }
+        if (oldest == Long.MAX_VALUE) { return; }
+        int limit = Math.max(firstEntry, count - REMERGE_WINDOW);
+        int tail = count;
+        while (tail > limit && getLineTime(tail - 1) > oldest) {
+            tail--;
+            int source = sourceOf(tail);
+            merged[source] = Math.min(merged[source], sourceLineOf(tail));
+        }
+        if (tail == count) { return; }
+        for (int s = 0; s < sources.length; s++) {
+            merged[s] = Math.max(merged[s], sources[s].getFirstLine());
+        }
+        count = tail;
+        rewritten = tail;
+    }
+
+    private void dropEvicted() {
+        int first = firstEntry;
+        int mask = entryLine.length - 1;
+        while (first < count && entryLine[first & mask] < sources[entrySource[first & mask]].getFirstLine()) {
+            first++;
+        }
+        firstEntry = first;
+    }
+
+    private void add(int source, int line) {
+        int[] sourceRing = entrySource;
+        int[] lineRing = entryLine;
+        if (count - firstEntry == lineRing.length) {
+            int[] grownSources = new int[lineRing.length * 2];
+            int[] grownLines = new int[lineRing.length * 2];
+            for (int entry = firstEntry; entry < count; entry++) {
+                grownSources[entry & (grownSources.length - 1)] = sourceRing[entry & (sourceRing.length - 1)];
+                grownLines[entry & (grownLines.length - 1)] = lineRing[entry & (lineRing.length - 1)];
+            }
+            sourceRing = grownSources;
+            lineRing = grownLines;
+            entrySource = grownSources;
+            entryLine = grownLines;
+        }
+        sourceRing[count & (sourceRing.length - 1)] = source;
+        lineRing[count & (lineRing.length - 1)] = line;
+        count++;
+    }
+
+    @Override
+    public int getLineCount() {
+        return count;
+    }
+
+    @Override
+    public int getFirstLine() {
+        return firstEntry;
+    }
+
+    @Override
+    public int getRewrittenLine() {
+        return rewritten;
+    }
+
+    private int sourceOf(int line) {
+        int[] ring = entrySource;
+        return ring[line & (ring.length - 1)];
+    }
+
+    private int sourceLineOf(int line) {
+        int[] ring = entryLine;
+        return ring[line & (ring.length - 1)];
+    }
+
+    @Override
+    public int getLineLength(int line) {
+        return tags[sourceOf(line)].length() + sources[sourceOf(line)].getLineLength(sourceLineOf(line));
+    }
+
+    @Override
+    public long getLineTime(int line) {
+        return sources[sourceOf(line)].getLineTime(sourceLineOf(line));
+    }
+
+    @Override
+    public String getLineText(int line, int fromColumn, int maxChars) {
+        int source = sourceOf(line);
+        String tag = tags[source];
+        String text = sources[source].getLineText(sourceLineOf(line), Math.max(0, fromColumn - tag.length()), maxChars);
+        if (fromColumn >= tag.length()) {
+            return text;
+        }
+        String tagged = tag.substring(fromColumn) + text;
+        return tagged.length() > maxChars ? tagged.substring(0, maxChars) : tagged;
+    }
+}
@@ -1,91 +1,403 @@
 package com.jacobwigent.wiretap.serial;
 
+import com.jacobwigent.wiretap.capture.CaptureStore;
+import com.jacobwigent.wiretap.capture.LineArchive;
 import com.jacobwigent.wiretap.display.SerialMonitor;
+import com.jacobwigent.wiretap.protocol.FrameDecoder;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-public class MessageHandler implements SerialListener {
+/*
+    Turns a port's raw chunks into the capture store and the line store.
+    By default the bytes are text split into lines; with a frame decoder set, each decoded frame becomes one
+    line of hex bytes instead, stamped with the read time of its first byte.
 
-    private final SerialMonitor monitor;
+    A read's timestamp is when its last byte arrived. With interpolation on, a text line that starts partway
+    through a read is stamped earlier by one byte time (from the baud rate) for each byte after it, which
+    separates lines that a slow poll returned together.
 
-    private boolean frozen = false;
+    Threading: onSerialBytes() is the single writer. It runs on the session's dispatcher thread for this
+    listener (or on whatever one thread feeds a detached handler) and is the only code that touches the
+    framer, the frame decoder, the stores' write side and the line state. Any other thread may call the
+    getters, setFreeze(), reset(), setLineDelimiter() and setFrameDecoder(): freezing and the counters are
+    plain volatile cursors, and anything that would touch writer state is queued and applied by the writer
+    before it handles its next chunk.
+    Readers of getLines() follow LineStore's publication rules.
+ */
+public class MessageHandler implements SerialByteListener, LineFramer.LineSink, FrameDecoder.FrameSink {
 
-    private final List<SerialMessage> allMessages = new ArrayList<>();
-    private final List<SerialMessage> freezeBuffer = new ArrayList<>();
-    private final List<SerialMessage> accessibleMessages = new ArrayList<>();
+    // Decoded lines kept in memory; the raw capture on disk always has everything
+    private static final int DEFAULT_MAX_LINES = 2_000_000;
+    private static final long DEFAULT_MAX_CHARS = 64L << 20;
+    // The line being received can't be evicted, so one that never ends is broken here instead
+    private static final int DEFAULT_MAX_LINE_CHARS = 1 << 20;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String FRAME_ERROR = " <malformed>";
 
-    private final List<SerialLine> accessibleLines = new ArrayList<>();
-    private SerialLine currentLineBuffer = null;
+    private final PortSession session;
+    private final Runnable onLinesChanged;
+    private final CaptureStore store;
+    private final LineStore lines = new LineStore();
+    private final LineFramer framer = new LineFramer(this);
+    private LineArchive archive;
+
+    // Messages live in the capture store; these are chunk indices into it.
+    // While frozen, frozenEnd is the cursor the view stays at; -1 when live.
+    private volatile int accessibleStart = 0;
+    private volatile int frozenEnd = -1;
+
+    private volatile int lineBase = 0;
+    private volatile long frameErrors = 0;
+    private volatile boolean interpolateTimestamps = Boolean.getBoolean("wiretap.interpolateTimestamps");
+    private final int maxLineChars = Integer.getInteger("wiretap.maxLineChars", DEFAULT_MAX_LINE_CHARS);
+
+    // Writer-thread state
+    private StreamingDecoder decoder = new StreamingDecoder(StandardCharsets.UTF_8);
+    private boolean lineOpen = false;
+    // Bytes fed into the open line; a byte never decodes to more than one char
+    private int lineBytes = 0;
+    private long chunkTime = 0;
+    private int chunkLength = 0;
+    // Array offset of the chunk's first byte in what the framer is fed, so slices map back to chunk positions
+    private int feedOrigin = 0;
+    private int lastDataEnd = 0;
+    private long byteNanos = 0;
+    // Interpolated times don't reach back past the previous read
+    private long timeFloor = Long.MIN_VALUE;
+    // Null while decoding text lines
+    private FrameDecoder frameDecoder;
+    private int frameBytes = 0;
+    private byte[] feedScratch;
+    private final char[] hexChars = new char[3 * 1024];
+    private final Queue<Runnable> writerTasks = new ConcurrentLinkedQueue<>();
 
     public MessageHandler(SerialMonitor monitor) {
-        this.monitor = monitor;
-        SerialService.addListener(this);
+        this(SerialService.getCurrentSession(), monitor);
+    }
+
+    public MessageHandler(PortSession session, SerialMonitor monitor) {
+        this(session, monitor::requestRefresh, CaptureStore.getDefaultRoot());
+    }
+
+    // Creates a handler that isn't attached to any port; feed it through onSerialBytes directly
+    public MessageHandler(Runnable onLinesChanged, Path captureRoot) {
+        this(null, onLinesChanged, captureRoot);
+    }
+
+    public MessageHandler(PortSession session, Runnable onLinesChanged, Path captureRoot) {
+        this.session = session;
+        this.onLinesChanged = onLinesChanged;
+        try {
+            this.store = CaptureStore.create(captureRoot);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        configureRetention();
+        if (session != null) {
+            session.addByteListener(this);
+        }
+    }
+
+    /*
+        Bounds the in-memory lines (-Dwiretap.maxLines, -Dwiretap.maxChars, -Dwiretap.maxAgeSeconds; 0 = unlimited).
+        A line longer than -Dwiretap.maxLineChars is continued on a new line.
+        With -Dwiretap.spillEvictedLines=true evicted lines are also written to the capture directory,
+        which is then kept after close().
+     */
+    private void configureRetention() {
+        lines.setMaxLines(Integer.getInteger("wiretap.maxLines", DEFAULT_MAX_LINES));
+        lines.setMaxChars(Long.getLong("wiretap.maxChars", DEFAULT_MAX_CHARS));
+        lines.setMaxAge(Long.getLong("wiretap.maxAgeSeconds", 0), TimeUnit.SECONDS);
+        if (Boolean.getBoolean("wiretap.spillEvictedLines")) {
+            try {
+                archive = new LineArchive(store.getDirectory().resolve("evicted-lines.txt"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            lines.setEvictionListener(archive);
+            store.setKeep(true);
+        }
     }
 
     @Override
-    public void onSerialData(SerialMessage msg) {
-        allMessages.add(msg);
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        Runnable task;
+        while ((task = writerTasks.poll()) != null) {
+            task.run();
+        }
 
-        if (frozen) {
-            freezeBuffer.add(msg);
+        int position = data.position();
+        store.append(store.toElapsedNanos(timestampNanos), data);
+
+        // Framing never pauses, so there is no backlog to catch up on when a freeze ends
+        data.position(position);
+        // Timestamps run backwards only when a replay seeks; nothing before the seek bounds the new times
+        timeFloor = chunkTime <= timestampNanos ? chunkTime : Long.MIN_VALUE;
+        chunkTime = timestampNanos;
+        chunkLength = data.remaining();
+        lastDataEnd = 0;
+        byteNanos = interpolateTimestamps && session != null ? session.getByteNanos() : 0;
+        feed(data);
+        if (frozenEnd < 0) {
+            onLinesChanged.run();
+        }
+    }
+
+    @Override
+    public void onLineData(byte[] data, int offset, int length) {
+        if (!lineOpen) {
+            lineBytes = 0;
+        }
+        while (maxLineChars > 0 && lineBytes + length > maxLineChars) {
+            int fit = maxLineChars - lineBytes;
+            appendLineData(data, offset, fit);
+            decoder.endOfLine(lines);
+            lineOpen = false;
+            lineBytes = 0;
+            offset += fit;
+            length -= fit;
+        }
+        if (length > 0) {
+            appendLineData(data, offset, length);
+        }
+    }
+
+    private void appendLineData(byte[] data, int offset, int length) {
+        if (!lineOpen) {
+            lines.startLine(lineTime(offset - feedOrigin));
+            lineOpen = true;
+        }
+        lastDataEnd = offset + length - feedOrigin;
+        decoder.decode(data, offset, length, lines);
+        lineBytes += length;
+    }
+
+    @Override
+    public void onLineEnd() {
+        if (!lineOpen) {
+            // An empty line; its delimiter comes right after the last data seen
+            lines.startLine(lineTime(lastDataEnd));
         } else {
-            accessibleMessages.add(msg);
-            handleNewMessage(msg);
+            decoder.endOfLine(lines);
         }
+        lineOpen = false;
+    }
+
+    // Read time of the byte at this position in the current chunk, interpolated back from the chunk's end
+    private long lineTime(int position) {
+        if (byteNanos == 0) { return chunkTime; }
+        int index = Math.max(0, Math.min(position, chunkLength - 1));
+        return Math.max(chunkTime - (chunkLength - 1 - index) * byteNanos, timeFloor);
     }
 
-    private void handleNewMessage(SerialMessage msg) {
-        String text = msg.getText();
-        if (text.endsWith("\n")) {
-            currentLineBuffer = null;
+    private void feed(ByteBuffer data) {
+        if (data.hasArray()) {
+            feedOrigin = data.arrayOffset() + data.position();
+            feed(data.array(), feedOrigin, data.remaining());
+            data.position(data.limit());
             return;
         }
+        if (feedScratch == null) {
+            feedScratch = new byte[8192];
+        }
+        int consumed = 0;
+        while (data.hasRemaining()) {
+            int n = Math.min(feedScratch.length, data.remaining());
+            data.get(feedScratch, 0, n);
+            feedOrigin = -consumed;
+            feed(feedScratch, 0, n);
+            consumed += n;
+        }
+    }
 
-        if (currentLineBuffer == null) {
-            currentLineBuffer = new SerialLine();
-            accessibleLines.add(currentLineBuffer);
-            javafx.application.Platform.runLater(() -> monitor.addLine(currentLineBuffer));
+    private void feed(byte[] data, int offset, int length) {
+        if (frameDecoder != null) {
+            frameDecoder.feed(data, offset, length);
+        } else {
+            framer.feed(data, offset, length);
         }
+    }
 
-        currentLineBuffer.add(msg);
+    // Frame bytes are shown as space-separated hex, formatted through a reused char buffer
+    @Override
+    public void onFrameData(byte[] data, int offset, int length) {
+        if (!lineOpen) {
+            lines.startLine(chunkTime);
+            lineOpen = true;
+        }
+        int end = offset + length;
+        int c = 0;
+        for (int i = offset; i < end; i++) {
+            if (maxLineChars > 0 && (frameBytes + 1) * 3 > maxLineChars) {
+                // An overlong frame carries on in a new line
+                lines.append(hexChars, 0, c);
+                c = 0;
+                lines.startLine(chunkTime);
+                frameBytes = 0;
+            }
+            if (c + 3 > hexChars.length) {
+                lines.append(hexChars, 0, c);
+                c = 0;
+            }
+            if (frameBytes++ > 0) {
+                hexChars[c++] = ' ';
+            }
+            hexChars[c++] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+            hexChars[c++] = HEX_DIGITS[data[i] & 0xf];
+        }
+        lines.append(hexChars, 0, c);
     }
 
+    @Override
+    public void onFrameEnd() {
+        if (!lineOpen) {
+            lines.startLine(chunkTime);
+        }
+        lineOpen = false;
+        frameBytes = 0;
+    }
 
-    public void setFreeze(boolean frozen) {
-        this.frozen = frozen;
-        if (!frozen) {
-            emptyBuffer();
+    @Override
+    public void onFrameError() {
+        if (!lineOpen) {
+            lines.startLine(chunkTime);
         }
+        lines.append(FRAME_ERROR);
+        lineOpen = false;
+        frameBytes = 0;
+        frameErrors++;
     }
 
-    private void emptyBuffer() {
-        for (SerialMessage msg : freezeBuffer) {
-            handleNewMessage(msg);
-            accessibleMessages.add(msg);
+    /*
+        Decodes frames with the given protocol from the next chunk on, e.g. CobsDecoder::new; null goes back
+        to text lines. A partly received line or frame is closed first.
+     */
+    public void setFrameDecoder(Function<FrameDecoder.FrameSink, FrameDecoder> factory) {
+        writerTasks.add(() -> {
+            if (lineOpen && frameDecoder == null) {
+                decoder.endOfLine(lines);
+            }
+            lineOpen = false;
+            frameBytes = 0;
+            framer.reset();
+            decoder.reset();
+            frameDecoder = factory == null ? null : factory.apply(this);
+        });
+    }
+
+    // Frames the decoder rejected as malformed since the handler was created
+    public long getFrameErrorCount() {
+        return frameErrors;
+    }
+
+    /*
+        Stamps text lines by their position in the read (see above) instead of with the read time alone.
+        Off by default (-Dwiretap.interpolateTimestamps=true); takes effect with the next chunk.
+     */
+    public void setTimestampInterpolation(boolean interpolate) {
+        this.interpolateTimestamps = interpolate;
+    }
+
+    // Takes effect from the next chunk
+    public void setLineDelimiter(LineFramer.Delimiter delimiter, byte customByte) {
+        writerTasks.add(() -> framer.setDelimiter(delimiter, customByte));
+    }
+
+
+    /*
+        Freezing pins a read cursor at the current end of the capture; unfreezing just drops it and asks for
+        one redraw. Nothing is replayed, so this is O(1) however long the freeze lasted.
+     */
+    public void setFreeze(boolean frozen) {
+        if (frozen) {
+            frozenEnd = store.getChunkCount();
+        } else {
+            frozenEnd = -1;
+            onLinesChanged.run();
         }
-        freezeBuffer.clear();
     }
 
+    public boolean isFrozen() {
+        return frozenEnd >= 0;
+    }
+
+    // Charset line text is decoded with (UTF-8 by default); takes effect from the next chunk
+    public void setCharset(Charset charset) {
+        writerTasks.add(() -> decoder = new StreamingDecoder(charset));
+    }
+
+    // Counts restart now; the line being received is closed before the next chunk is framed
     public void reset() {
-        accessibleMessages.clear();
-        accessibleLines.clear();
-        freezeBuffer.clear();
-        currentLineBuffer = null;
+        int start = store.getChunkCount();
+        accessibleStart = start;
+        // A frozen view stays frozen, at the new (empty) start
+        if (frozenEnd >= 0) {
+            frozenEnd = start;
+        }
+        lineBase = lines.getLineCount();
+        writerTasks.add(() -> {
+            lineOpen = false;
+            frameBytes = 0;
+            framer.reset();
+            decoder.reset();
+            if (frameDecoder != null) {
+                frameDecoder.reset();
+            }
+        });
     }
 
     @Override
     public void onDisconnect() {}
 
+    // Detaches from the port, flushes any spilled lines and closes the capture (deleting it unless kept)
+    public void close() {
+        if (session != null) {
+            session.removeByteListener(this);
+        }
+        if (archive != null) {
+            archive.close();
+        }
+        store.close();
+    }
+
+    public PortSession getSession() {
+        return session;
+    }
+
+    public CaptureStore getStore() {
+        return store;
+    }
+
     public int getAllMessageCount() {
-        return allMessages.size();
+        return store.getChunkCount();
     }
 
     public int getAccessibleMessageCount() {
-        return accessibleMessages.size();
+        int end = frozenEnd;
+        return Math.max(0, (end >= 0 ? end : store.getChunkCount()) - accessibleStart);
+    }
+
+    public LineStore getLines() {
+        return lines;
+    }
+
+    // Flyweight view of one line; pass the previous view back in to reuse it while walking many lines
+    public SerialLine getLine(int line, SerialLine reuse) {
+        if (reuse != null && reuse.getSource() == lines) {
+            return reuse.moveTo(line);
+        }
+        return new SerialLine(lines, line, store.toNanoTime(0));
     }
 
     public int getLineCount() {
-        return accessibleLines.size();
+        return lines.getLineCount() - lineBase;
     }
 }
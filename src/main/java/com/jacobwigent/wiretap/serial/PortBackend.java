@@ -0,0 +1,37 @@
+package com.jacobwigent.wiretap.serial;
+
+/*
+    A byte source/sink that a PortSession reads from. Real hardware goes through JSerialCommBackend;
+    SyntheticBackend stands in for a device so the whole pipeline can run without one.
+ */
+public interface PortBackend {
+
+    String getSystemPortName();
+
+    String getDescriptivePortName();
+
+    boolean openPort();
+
+    boolean closePort();
+
+    boolean isOpen();
+
+    int getBaudRate();
+
+    void setBaudRate(int baudRate);
+
+    // Waits up to the backend's read timeout; returns the number of bytes read, 0 on timeout, or -1 once the port is gone
+    int readBytes(byte[] buffer, int offset, int maxLength);
+
+    // System.nanoTime()-based timestamp for the bytes just read; replayed data reports its recorded time
+    default long getReadTimestamp() {
+        return System.nanoTime();
+    }
+
+    int writeBytes(byte[] buffer, int offset, int length);
+
+    // True if reads can wait for slow listeners instead of making them drop chunks, e.g. replaying a file
+    default boolean isLossless() {
+        return false;
+    }
+}
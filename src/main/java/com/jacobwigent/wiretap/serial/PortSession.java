@@ -0,0 +1,291 @@
+package com.jacobwigent.wiretap.serial;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.jacobwigent.wiretap.metrics.Histogram;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+    One serial port and everything that reads from it: its reader thread, ring buffer, listener dispatchers
+    and statistics. Sessions share nothing, so several ports can be captured at once with each one scaling on
+    its own threads.
+ */
+public class PortSession {
+
+    private static final int RING_CAPACITY = 1 << 22;
+    private static final int RING_SLOTS = 1 << 16;
+    private static final long MAX_QUEUED_WRITE_BYTES = 16L << 20;
+    private static final int BITS_PER_BYTE = 10;
+
+    private final SerialRingBuffer ring = new SerialRingBuffer(RING_CAPACITY, RING_SLOTS);
+    private final List<SerialDispatcher> dispatchers = new CopyOnWriteArrayList<>();
+    private final Histogram readSizes = new Histogram();
+    private final List<SerialWriteListener> writeListeners = new CopyOnWriteArrayList<>();
+
+    private PortBackend port;
+    private SerialReader reader;
+    private SerialReader lastReader;
+    private volatile SerialWriter writer;
+    private long writeBytesPerSecond = 0;
+    private long interByteDelayNanos = 0;
+
+    // Wall-clock anchor for read timestamps, taken together with the nanoTime at open
+    private long connectionStartTime;
+    private long connectionStartNanos;
+
+    public PortSession() {}
+
+    public PortSession(String portName) {
+        selectPort(portName);
+    }
+
+    public PortSession(PortBackend backend) {
+        this.port = backend;
+    }
+
+    // Only takes effect while the session is closed; SIM: names select a SyntheticBackend, REPLAY: a recording
+    public void selectPort(String portName) {
+        if (isOpen()) { return; }
+        if (ReplayBackend.isReplayName(portName)) {
+            port = ReplayBackend.forName(portName);
+        } else if (SyntheticBackend.isSyntheticName(portName)) {
+            port = SyntheticBackend.forName(portName);
+        } else {
+            port = new JSerialCommBackend(SerialPort.getCommPort(portName));
+        }
+    }
+
+    public PortBackend getPort() {
+        return port;
+    }
+
+    public String getDescriptiveName() {
+        return port == null ? "" : port.getDescriptivePortName();
+    }
+
+    public String getName() {
+        return port == null ? "" : port.getSystemPortName();
+    }
+
+    public void addListener(SerialListener l) {
+        startDispatcher(new SerialMessageAdapter(this, l), l.getClass().getSimpleName());
+    }
+
+    public void addByteListener(SerialByteListener l) {
+        startDispatcher(l, l.getClass().getSimpleName());
+    }
+
+    // Detaches a listener; once this returns it will not be called again
+    public void removeByteListener(SerialByteListener l) {
+        for (SerialDispatcher d : dispatchers) {
+            if (d.getListener() == l) {
+                dispatchers.remove(d);
+                d.stop();
+                try {
+                    d.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Called on the writer thread after every write to the port, across reconnects
+    public void addWriteListener(SerialWriteListener l) {
+        writeListeners.add(l);
+    }
+
+    public void removeWriteListener(SerialWriteListener l) {
+        writeListeners.remove(l);
+    }
+
+    private void startDispatcher(SerialByteListener l, String name) {
+        SerialDispatcher dispatcher = new SerialDispatcher(ring, l, getName() + "-" + name);
+        dispatchers.add(dispatcher);
+        dispatcher.start();
+    }
+
+    public boolean open() {
+        if (port == null || !port.openPort()) { return false; }
+        connectionStartTime = System.currentTimeMillis();
+        connectionStartNanos = System.nanoTime();
+        reader = new SerialReader(port, ring, readSizes, this::notifyDisconnect);
+        lastReader = reader;
+        reader.start();
+        writer = new SerialWriter(port, MAX_QUEUED_WRITE_BYTES, writeListeners);
+        writer.setBytesPerSecond(writeBytesPerSecond);
+        writer.setInterByteDelayNanos(interByteDelayNanos);
+        writer.start();
+        return true;
+    }
+
+    public boolean close() {
+        stopWriter();
+        stopReader();
+        if (port == null || !port.isOpen()) return true;
+        return port.closePort();
+    }
+
+    private void stopWriter() {
+        SerialWriter stopping = writer;
+        if (stopping == null) { return; }
+        writer = null;
+        stopping.stop();
+        try {
+            stopping.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+        Queues bytes to be written to the port by the session's writer thread and returns immediately.
+        False if the port isn't open or too much is already queued. The array must not be changed afterwards.
+     */
+    public boolean send(byte[] data) {
+        SerialWriter w = writer;
+        return w != null && w.offer(data);
+    }
+
+    // Caps the write rate (0 = as fast as the port takes it)
+    public void setWriteRate(long bytesPerSecond) {
+        this.writeBytesPerSecond = bytesPerSecond;
+        SerialWriter w = writer;
+        if (w != null) {
+            w.setBytesPerSecond(bytesPerSecond);
+        }
+    }
+
+    // Writes one byte at a time with this pause after each (0 = off); overrides the write rate
+    public void setInterByteDelay(long delay, TimeUnit unit) {
+        this.interByteDelayNanos = unit.toNanos(delay);
+        SerialWriter w = writer;
+        if (w != null) {
+            w.setInterByteDelayNanos(interByteDelayNanos);
+        }
+    }
+
+    public long getWriteRate() {
+        return writeBytesPerSecond;
+    }
+
+    public long getInterByteDelayNanos() {
+        return interByteDelayNanos;
+    }
+
+    public long getQueuedWriteBytes() {
+        SerialWriter w = writer;
+        return w == null ? 0 : w.getQueuedBytes();
+    }
+
+    public long getBytesWritten() {
+        SerialWriter w = writer;
+        return w == null ? 0 : w.getBytesWritten();
+    }
+
+    // Drops queued writes that haven't reached the port yet
+    public void clearWriteQueue() {
+        SerialWriter w = writer;
+        if (w != null) {
+            w.clear();
+        }
+    }
+
+    private void stopReader() {
+        if (reader == null) { return; }
+        reader.stop();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader = null;
+    }
+
+    // Closes the port and stops every dispatcher; the session can't be reused afterwards
+    public void dispose() {
+        for (SerialDispatcher d : dispatchers) {
+            d.stop();
+        }
+        dispatchers.clear();
+        close();
+    }
+
+    private void notifyDisconnect() {
+        for (SerialDispatcher d : dispatchers) {
+            d.getListener().onDisconnect();
+        }
+    }
+
+    public boolean isOpen() {
+        return port != null && port.isOpen();
+    }
+
+    public int getBaudRate() {
+        return port == null ? 0 : port.getBaudRate();
+    }
+
+    public void setBaudRate(int baudRate) {
+        if (port == null) { return; }
+        port.setBaudRate(baudRate);
+    }
+
+    public long getBytesRead() {
+        return lastReader == null ? 0 : lastReader.getBytesRead();
+    }
+
+    public long getChunksRead() {
+        return lastReader == null ? 0 : lastReader.getChunksRead();
+    }
+
+    // Bytes per read, over every connection of this session
+    public Histogram getReadSizes() {
+        return readSizes;
+    }
+
+    public long getDroppedChunkCount() {
+        long dropped = 0;
+        for (SerialDispatcher d : dispatchers) {
+            dropped += d.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    // Milliseconds since the port was opened, on the monotonic clock
+    public long getElapsedConnectionTime() {
+        return getElapsedConnectionNanos() / 1_000_000L;
+    }
+
+    public long getElapsedConnectionNanos() {
+        if (!isOpen()) { return 0; }
+        return System.nanoTime() - connectionStartNanos;
+    }
+
+    // Time since the port was opened for a read timestamp (System.nanoTime)
+    public long getElapsedNanos(long timestampNanos) {
+        return timestampNanos - connectionStartNanos;
+    }
+
+    /*
+        Converts a read timestamp (System.nanoTime) to wall-clock time. The wall clock is only sampled once,
+        when the port opens, so later clock adjustments don't make timestamps jump or run backwards.
+     */
+    public long toEpochMillis(long timestampNanos) {
+        return connectionStartTime + Math.floorDiv(timestampNanos - connectionStartNanos, 1_000_000L);
+    }
+
+    public long toEpochMicros(long timestampNanos) {
+        return connectionStartTime * 1000L + Math.floorDiv(timestampNanos - connectionStartNanos, 1000L);
+    }
+
+    /*
+        Time one byte takes on the wire at the current baud rate, assuming 10 bits per byte (8N1 with start and
+        stop bits); 0 if the rate is unknown.
+     */
+    public long getByteNanos() {
+        int baudRate = getBaudRate();
+        return baudRate <= 0 ? 0 : BITS_PER_BYTE * 1_000_000_000L / baudRate;
+    }
+}
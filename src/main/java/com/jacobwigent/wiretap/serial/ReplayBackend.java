@@ -0,0 +1,248 @@
+package com.jacobwigent.wiretap.serial;
+
+import com.jacobwigent.wiretap.capture.RecordingReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Plays a .wtap recording back as if it were a port, so it goes through the same session, listeners and
+    views as live data. Each record is delivered as one read, stamped with its recorded time relative to
+    the first chunk played, so the data keeps its original timing in the views at any speed.
+
+    Speed 1 paces reads at the recorded timing, larger values play faster, and SPEED_MAX delivers records
+    as fast as the pipeline takes them. seek() may be called from any thread and is applied by the reader.
+    The port stays open and idle at the end of the recording.
+
+    Port names: REPLAY:<file>.
+ */
+public class ReplayBackend implements PortBackend {
+
+    public static final String PREFIX = "REPLAY:";
+    public static final double SPEED_MAX = 0;
+
+    private static final int READ_TIMEOUT_MILLIS = 100;
+    private static final long NO_SEEK = Long.MIN_VALUE;
+
+    private final String name;
+    private final Path file;
+
+    private volatile boolean open = false;
+    private volatile double speed = 1;
+    private volatile long pendingSeek = NO_SEEK;
+    private volatile boolean finished = false;
+    private volatile long positionNanos = 0;
+    private int baudRate;
+
+    // Reader-thread state
+    private RecordingReader reader;
+    private ByteBuffer record;
+    private long recordTime;
+    private long openNanos;
+    // Recorded time of the first chunk played, which lines up with openNanos
+    private long timeBase;
+    // Pacing: the wall time at which the recording time paceElapsed is due
+    private long paceNanos;
+    private long paceElapsed;
+    private double paceSpeed;
+
+    public ReplayBackend(Path file) {
+        this.file = file;
+        this.name = PREFIX + file.getFileName();
+    }
+
+    public static boolean isReplayName(String portName) {
+        return portName != null && portName.toUpperCase(Locale.ROOT).startsWith(PREFIX);
+    }
+
+    public static ReplayBackend forName(String portName) {
+        return new ReplayBackend(Paths.get(portName.substring(PREFIX.length())));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // 1 = recorded timing, 2 = twice as fast, SPEED_MAX = unpaced
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    // Continues playback from the first chunk recorded at or after this time since the recording started
+    public void seek(long elapsed, TimeUnit unit) {
+        pendingSeek = unit.toNanos(elapsed);
+    }
+
+    // Recorded time of the last chunk delivered, since the recording started
+    public long getPositionNanos() {
+        return positionNanos;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public String getSystemPortName() {
+        return name;
+    }
+
+    @Override
+    public String getDescriptivePortName() {
+        return "Replay of " + file.getFileName();
+    }
+
+    @Override
+    public boolean openPort() {
+        closeReader();
+        try {
+            reader = RecordingReader.open(file);
+        } catch (IOException e) {
+            return false;
+        }
+        if (reader.getBaudRate() > 0) {
+            baudRate = reader.getBaudRate();
+        }
+        openNanos = System.nanoTime();
+        timeBase = NO_SEEK;
+        record = null;
+        finished = false;
+        positionNanos = 0;
+        repace(0);
+        open = true;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean closePort() {
+        open = false;
+        notifyAll();
+        closeReader();
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, int offset, int maxLength) {
+        if (!open) { return -1; }
+        long seek = pendingSeek;
+        if (seek != NO_SEEK) {
+            pendingSeek = NO_SEEK;
+            reader.seek(seek);
+            record = null;
+            finished = false;
+            repace(seek);
+        }
+        if (record == null || !record.hasRemaining()) {
+            if (!reader.next()) {
+                finished = true;
+                record = null;
+                idle();
+                return open ? 0 : -1;
+            }
+            record = reader.getData();
+            recordTime = reader.getElapsedNanos();
+            if (timeBase == NO_SEEK) {
+                // Start playing at the first chunk rather than at the time the recording was started
+                timeBase = recordTime;
+                repace(recordTime);
+            }
+            if (!awaitDue(recordTime)) {
+                record = null;
+                return open ? 0 : -1;
+            }
+        }
+
+        int n = Math.min(maxLength, record.remaining());
+        record.get(buffer, offset, n);
+        positionNanos = recordTime;
+        return n;
+    }
+
+    // Recorded time mapped onto this run, so gaps between chunks are the recorded ones at any speed
+    @Override
+    public long getReadTimestamp() {
+        return openNanos + (recordTime - timeBase);
+    }
+
+    // A recording can always wait, so max-speed playback never makes listeners drop chunks
+    @Override
+    public boolean isLossless() {
+        return true;
+    }
+
+    @Override
+    public int writeBytes(byte[] buffer, int offset, int length) {
+        // Nothing is listening on a recording; writes are accepted and dropped
+        return open ? length : -1;
+    }
+
+    private void repace(long elapsed) {
+        paceNanos = System.nanoTime();
+        paceElapsed = elapsed;
+        paceSpeed = speed;
+    }
+
+    // Sleeps until the record is due at the current speed; false if a seek or close should drop it instead
+    private boolean awaitDue(long elapsed) {
+        while (open) {
+            if (pendingSeek != NO_SEEK) { return false; }
+            if (speed != paceSpeed) {
+                repace(positionNanos);
+            }
+            if (paceSpeed == SPEED_MAX) { return true; }
+            // Records before the pace point (e.g. right after a seek) are due immediately
+            long due = paceNanos + (long) (Math.max(0, elapsed - paceElapsed) / paceSpeed);
+            long wait = due - System.nanoTime();
+            if (wait <= 0) { return true; }
+            sleepNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MILLIS)));
+        }
+        return false;
+    }
+
+    private synchronized void idle() {
+        try {
+            wait(READ_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void closeReader() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
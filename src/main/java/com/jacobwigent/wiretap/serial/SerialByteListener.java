@@ -0,0 +1,18 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.nio.ByteBuffer;
+
+/*
+    Low-level counterpart of SerialListener for consumers that want the raw bytes.
+    The buffer wraps the dispatcher's copy of the chunk and is reused for the next one, so it is only valid
+    until the call returns; copy out anything that has to outlive it, and don't write to it. Nothing is decoded
+    or allocated on this path.
+
+    The port reader never waits for listeners. A listener that falls a whole ring behind loses the chunks that
+    were overwritten before it got to them (PortSession.getDroppedChunkCount()), but a chunk it is handed is
+    always intact.
+ */
+public interface SerialByteListener {
+    void onSerialBytes(ByteBuffer data, long timestampNanos);
+    void onDisconnect();
+}
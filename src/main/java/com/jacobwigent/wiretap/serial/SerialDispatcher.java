@@ -0,0 +1,75 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Consumer thread that feeds one listener from the ring buffer.
+    Each listener gets its own dispatcher, so a slow listener only ever falls behind itself.
+    The cursor copies each chunk out of the ring and validates the copy, so a listener only ever sees intact
+    chunks and never holds up the port reader; chunks lapped before they were copied are counted as dropped.
+ */
+class SerialDispatcher implements Runnable, SerialRingBuffer.ChunkHandler {
+
+    private static final int BATCH_SIZE = 64;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final SerialByteListener listener;
+    private final SerialRingBuffer ring;
+    private ByteBuffer view;
+    private final SerialRingBuffer.Cursor cursor;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    SerialDispatcher(SerialRingBuffer ring, SerialByteListener listener, String name) {
+        this.ring = ring;
+        this.listener = listener;
+        this.cursor = ring.newCursor();
+        this.thread = new Thread(this, "serial-dispatch-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+        ring.release(cursor);
+    }
+
+    // Waits for a stopped dispatcher to finish its current callback
+    void join() throws InterruptedException {
+        if (Thread.currentThread() != thread) {
+            thread.join();
+        }
+    }
+
+    SerialByteListener getListener() {
+        return listener;
+    }
+
+    long getDroppedCount() {
+        return cursor.getDroppedCount();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            if (cursor.poll(this, BATCH_SIZE) == 0) {
+                cursor.await(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    @Override
+    public void onChunk(byte[] data, int offset, int length, long timestamp) {
+        if (view == null || view.array() != data) {
+            view = ByteBuffer.wrap(data);
+        }
+        view.clear();
+        view.limit(offset + length).position(offset);
+        listener.onSerialBytes(view, timestamp);
+    }
+}
@@ -1,36 +1,66 @@
 package com.jacobwigent.wiretap.serial;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Objects;
 
+/*
+    Flyweight view of one line in a LineSource. Lines themselves are only offsets and timestamps in the
+    store's primitive arrays; a SerialLine is created (or moved with moveTo) when code wants to treat one as
+    an object, so the per-line heap cost doesn't depend on how many views exist.
+ */
 public class SerialLine {
-    private final ObservableList<SerialMessage> messages = FXCollections.observableArrayList();
-    private LocalDateTime time;
-    private Long elapsedMillis;
 
-    public void add(SerialMessage msg) {
-        if (this.elapsedMillis == null) {
-            this.elapsedMillis = msg.getElapsedMillis();
-        }
-        if (this.time == null) {
-            this.time = msg.getTimestamp();
-        }
-        messages.add(msg);
+    private final LineSource source;
+    private final long startNanos;
+    private int line;
+
+    // startNanos is the System.nanoTime() that elapsed times are measured from
+    public SerialLine(LineSource source, int line, long startNanos) {
+        this.source = source;
+        this.line = line;
+        this.startNanos = startNanos;
+    }
+
+    // Points this view at another line of the same source, so one instance can walk many lines
+    public SerialLine moveTo(int line) {
+        this.line = line;
+        return this;
+    }
+
+    public int getIndex() {
+        return line;
+    }
+
+    public LineSource getSource() {
+        return source;
     }
 
     public String getLineText() {
-        StringBuilder sb = new StringBuilder();
-        for (SerialMessage msg : messages) {
-            sb.append(msg.getText());
-        }
-        return sb.toString();
+        return source.getLineText(line);
+    }
+
+    public void appendLineText(StringBuilder sb) {
+        source.appendLineText(line, sb);
+    }
+
+    public int getLength() {
+        return source.getLineLength(line);
+    }
+
+    // System.nanoTime() of the read that started the line
+    public long getTimeNanos() {
+        return source.getLineTime(line);
+    }
+
+    public long getElapsedMillis() {
+        return (getTimeNanos() - startNanos) / 1_000_000L;
     }
 
-    public ObservableList<SerialMessage> getMessages() {
-        return messages;
+    public LocalDateTime getTime() {
+        long epochMillis = System.currentTimeMillis() - (System.nanoTime() - getTimeNanos()) / 1_000_000L;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 
     @Override
@@ -38,13 +68,11 @@ public class SerialLine {
         if (this == o) return true;
         if (!(o instanceof SerialLine)) return false;
         SerialLine that = (SerialLine) o;
-        return Objects.equals(messages, that.messages) &&
-                Objects.equals(time, that.time) &&
-                Objects.equals(elapsedMillis, that.elapsedMillis);
+        return source == that.source && line == that.line;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(messages, time, elapsedMillis);
+        return Objects.hash(System.identityHashCode(source), line);
     }
 }
@@ -1,41 +1,111 @@
 package com.jacobwigent.wiretap.serial;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 public class SerialMessage {
-    private final long elapsedMillis;
-    private final LocalDateTime timestamp;
-    private final String text;
+    private final long elapsedNanos;
+    private final long epochMillis;
+    private final byte[] data;
+    // Built on first use; most messages are never asked for either
+    private LocalDateTime timestamp;
+    private String text;
 
     protected SerialMessage(long elapsedMillis, LocalDateTime timestamp, String text) {
-        this.elapsedMillis = elapsedMillis;
+        this.elapsedNanos = elapsedMillis * 1_000_000L;
         this.timestamp = timestamp;
+        this.epochMillis = timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
         this.text = text;//.replace("\r\n", "\n").replace("\r", "\n");;
+        this.data = text.getBytes();
+    }
+
+    protected SerialMessage(long elapsedMillis, LocalDateTime timestamp, byte[] data) {
+        this.elapsedNanos = elapsedMillis * 1_000_000L;
+        this.timestamp = timestamp;
+        this.epochMillis = timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        this.data = data;
+    }
+
+    // elapsedNanos is measured from the connection start on the same System.nanoTime() clock as the read
+    protected SerialMessage(long elapsedNanos, long epochMillis, byte[] data) {
+        this.elapsedNanos = elapsedNanos;
+        this.epochMillis = epochMillis;
+        this.data = data;
     }
 
     public long getElapsedMillis() {
-        return elapsedMillis;
+        return elapsedNanos / 1_000_000L;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
     }
 
     public LocalDateTime getTimestamp() {
+        if (timestamp == null) {
+            timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+        }
         return timestamp;
     }
 
     public String getText() {
+        if (text == null) {
+            text = new String(data);
+        }
         return text;
     }
 
+    public byte[] getData() {
+        return data;
+    }
+
     @Override
     public String toString() {
-        return "[" + formatTime(elapsedMillis) + "] " + text;
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        appendElapsed(sb, elapsedNanos);
+        return sb.append("] ").append(getText()).toString();
     }
 
+    // Minutes, seconds and milliseconds as "m:s:ms", unpadded
     public static String formatTime(long milliseconds) {
-        int totalSeconds = (int) (milliseconds / 1000);
-        int minutes = totalSeconds / 60;
-        long seconds = totalSeconds % 60;
-        long remainingMilliseconds = milliseconds % 1000;
+        long totalSeconds = milliseconds / 1000;
+        return new StringBuilder(16)
+                .append(totalSeconds / 60).append(':')
+                .append(totalSeconds % 60).append(':')
+                .append(milliseconds % 1000).toString();
+    }
+
+    /*
+        Appends an elapsed time as "m:ss.uuuuuu" (minutes, seconds and microseconds), e.g. 62:03.004517.
+        Built digit by digit into the caller's builder, so formatting many timestamps doesn't allocate.
+     */
+    public static StringBuilder appendElapsed(StringBuilder sb, long nanos) {
+        if (nanos < 0) {
+            sb.append('-');
+            nanos = -nanos;
+        }
+        long micros = nanos / 1000;
+        long seconds = micros / 1_000_000L;
+        long fraction = micros % 1_000_000L;
+        sb.append(seconds / 60).append(':');
+        long secondOfMinute = seconds % 60;
+        if (secondOfMinute < 10) {
+            sb.append('0');
+        }
+        sb.append(secondOfMinute).append('.');
+        for (long digit = 100_000L; digit > fraction && digit > 1; digit /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
 
-        return String.format("%d:%d:%d", minutes, seconds, remainingMilliseconds);
+    public static String formatElapsed(long nanos) {
+        return appendElapsed(new StringBuilder(16), nanos).toString();
     }
 }
@@ -0,0 +1,34 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.nio.ByteBuffer;
+
+// Decodes raw chunks into SerialMessages for listeners that work with text
+class SerialMessageAdapter implements SerialByteListener {
+
+    private final PortSession session;
+    private final SerialListener listener;
+
+    SerialMessageAdapter(PortSession session, SerialListener listener) {
+        this.session = session;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onSerialBytes(ByteBuffer data, long timestampNanos) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        // Every listener sees the same read stamp, converted with the session's one wall-clock anchor
+        listener.onSerialData(new SerialMessage(session.getElapsedNanos(timestampNanos),
+                session.toEpochMillis(timestampNanos), bytes));
+    }
+
+    @Override
+    public void onDisconnect() {
+        listener.onDisconnect();
+    }
+
+    @Override
+    public String toString() {
+        return listener.getClass().getSimpleName();
+    }
+}
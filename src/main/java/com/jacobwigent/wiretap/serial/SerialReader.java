@@ -0,0 +1,86 @@
+package com.jacobwigent.wiretap.serial;
+
+import com.jacobwigent.wiretap.metrics.Histogram;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Dedicated thread that drains the open port into the ring buffer.
+    It does nothing but read and publish, so the OS buffer is emptied as fast as the port can deliver.
+ */
+class SerialReader implements Runnable {
+
+    static final int MAX_READ_SIZE = 4096;
+    private static final int JOIN_TIMEOUT_MILLIS = 500;
+    private static final long BACKLOG_WAIT_NANOS = 200_000;
+
+    private final PortBackend port;
+    private final SerialRingBuffer ring;
+    private final Histogram readSizes;
+    private final Runnable onConnectionLost;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Written only by the reader thread
+    private volatile long bytesRead = 0;
+    private volatile long chunksRead = 0;
+
+    SerialReader(PortBackend port, SerialRingBuffer ring, Histogram readSizes, Runnable onConnectionLost) {
+        this.port = port;
+        this.ring = ring;
+        this.readSizes = readSizes;
+        this.onConnectionLost = onConnectionLost;
+        this.thread = new Thread(this, "serial-reader-" + port.getSystemPortName());
+        this.thread.setDaemon(true);
+        this.thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Stops reading; the port itself is closed by the caller
+    void stop() {
+        running = false;
+    }
+
+    void join() throws InterruptedException {
+        if (Thread.currentThread() != thread) {
+            thread.join(JOIN_TIMEOUT_MILLIS);
+        }
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getChunksRead() {
+        return chunksRead;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = ring.array();
+        boolean lossless = port.isLossless();
+        while (running) {
+            while (lossless && running && ring.isBacklogged()) {
+                LockSupport.parkNanos(BACKLOG_WAIT_NANOS);
+            }
+            int offset = ring.claim(MAX_READ_SIZE);
+            int numRead = port.readBytes(buffer, offset, MAX_READ_SIZE);
+            if (numRead < 0) {
+                if (running) {
+                    running = false;
+                    onConnectionLost.run();
+                }
+                return;
+            }
+            if (numRead > 0) {
+                ring.publish(numRead, port.getReadTimestamp());
+                bytesRead += numRead;
+                chunksRead++;
+                readSizes.record(numRead);
+            }
+        }
+    }
+}
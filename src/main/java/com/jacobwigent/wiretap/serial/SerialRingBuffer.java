@@ -0,0 +1,219 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Single-producer, multi-consumer ring of byte chunks.
+    The reader thread reads straight into a preallocated byte ring and publishes one descriptor per read.
+    Every consumer follows with its own Cursor, so the producer never waits on anyone. A consumer that
+    falls more than a ring behind skips ahead and counts the chunks it lost instead of stalling the port.
+ */
+public class SerialRingBuffer {
+
+    public interface ChunkHandler {
+        void onChunk(byte[] data, int offset, int length, long timestamp);
+    }
+
+    private final byte[] data;
+    private final int dataMask;
+
+    private final long[] chunkStart;
+    private final int[] chunkLength;
+    private final long[] chunkTime;
+    private final int slotMask;
+
+    // Producer-only state
+    private long writePosition = 0;
+    private long claimedStart = 0;
+
+    // Published state, read by consumers
+    private volatile long published = 0;
+    private volatile long writingSlot = -1;
+    private volatile long writingBytes = 0;
+
+    private final CopyOnWriteArrayList<Cursor> cursors = new CopyOnWriteArrayList<>();
+
+    public SerialRingBuffer(int dataCapacity, int slotCount) {
+        if (Integer.bitCount(dataCapacity) != 1 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Ring capacities must be powers of two");
+        }
+        this.data = new byte[dataCapacity];
+        this.dataMask = dataCapacity - 1;
+        this.chunkStart = new long[slotCount];
+        this.chunkLength = new int[slotCount];
+        this.chunkTime = new long[slotCount];
+        this.slotMask = slotCount - 1;
+    }
+
+    public byte[] array() {
+        return data;
+    }
+
+    /*
+        Producer side: reserves a contiguous region of up to maxLength bytes and returns its offset in array().
+        Regions never wrap, so a chunk is always a single slice of the backing array.
+     */
+    public int claim(int maxLength) {
+        if (maxLength > data.length / 2) {
+            throw new IllegalArgumentException("Claim larger than half the ring");
+        }
+        int offset = (int) (writePosition & dataMask);
+        if (offset + maxLength > data.length) {
+            writePosition += data.length - offset;
+            offset = 0;
+        }
+        claimedStart = writePosition;
+        writingBytes = writePosition + maxLength;
+        // The region's new bytes must not become visible before the cursor that marks it as being rewritten
+        VarHandle.storeStoreFence();
+        return offset;
+    }
+
+    public void publish(int length, long timestamp) {
+        long seq = published;
+        int slot = (int) (seq & slotMask);
+        writingSlot = seq;
+        // Seqlock: a reader that sees any of the new descriptor values must also see the new writingSlot
+        VarHandle.storeStoreFence();
+        chunkStart[slot] = claimedStart;
+        chunkLength[slot] = length;
+        chunkTime[slot] = timestamp;
+        writePosition = claimedStart + length;
+        published = seq + 1;
+
+        for (Cursor c : cursors) {
+            Thread waiter = c.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /*
+        Producer side: true while some consumer is more than half a ring behind, in chunks or in bytes.
+        Producers that can afford to wait rather than make consumers drop chunks check this before claiming.
+     */
+    public boolean isBacklogged() {
+        long seq = published;
+        for (Cursor c : cursors) {
+            long next = c.next;
+            if (seq - next > (slotMask + 1) / 2) { return true; }
+            if (next < seq && writePosition - chunkStart[(int) (next & slotMask)] > data.length / 2) { return true; }
+        }
+        return false;
+    }
+
+    public long getPublishedCount() {
+        return published;
+    }
+
+    public int getCapacity() {
+        return data.length;
+    }
+
+    public Cursor newCursor() {
+        Cursor c = new Cursor(published);
+        cursors.add(c);
+        return c;
+    }
+
+    public void release(Cursor c) {
+        cursors.remove(c);
+    }
+
+    public class Cursor {
+        // Volatile so a waiting producer sees consumers catch up
+        private volatile long next;
+        private long dropped = 0;
+        private long torn = 0;
+        private volatile Thread waiter;
+        // Each chunk is copied out of the ring and validated before the handler sees it
+        private byte[] copy = new byte[0];
+
+        private Cursor(long start) {
+            this.next = start;
+        }
+
+        /*
+            Hands up to maxChunks published chunks to the handler, returning how many were delivered.
+            The handler gets this cursor's private copy of the chunk, which is reused for the next one.
+
+            Reads are a seqlock: the descriptor is checked against the producer's cursors before the bytes are
+            copied, and the copy again afterwards. A chunk the producer overwrote in the meantime is never
+            delivered; it is counted as dropped (see getTornCount()).
+         */
+        public int poll(ChunkHandler handler, int maxChunks) {
+            int delivered = 0;
+            while (delivered < maxChunks) {
+                long available = published;
+                if (next >= available) {
+                    break;
+                }
+                if (available - next > slotMask + 1) {
+                    skipTo(available);
+                    continue;
+                }
+
+                int slot = (int) (next & slotMask);
+                long start = chunkStart[slot];
+                int length = chunkLength[slot];
+                long time = chunkTime[slot];
+
+                // Validate the descriptor (and the bytes it points to) were not overwritten while we read them
+                VarHandle.acquireFence();
+                if (writingSlot - next > slotMask || writingBytes - start > data.length) {
+                    skipTo(published);
+                    continue;
+                }
+
+                if (copy.length < length) {
+                    copy = new byte[Math.max(length, copy.length * 2)];
+                }
+                System.arraycopy(data, (int) (start & dataMask), copy, 0, length);
+
+                VarHandle.acquireFence();
+                if (writingBytes - start > data.length) {
+                    // Lapped while copying: the copy may be torn
+                    torn++;
+                    skipTo(Math.max(next + 1, published));
+                    continue;
+                }
+                next++;
+                delivered++;
+                handler.onChunk(copy, 0, length, time);
+            }
+            return delivered;
+        }
+
+        private void skipTo(long seq) {
+            dropped += seq - next;
+            next = seq;
+        }
+
+        // Parks the calling thread until new data is published or the timeout elapses
+        public void await(long timeoutNanos) {
+            if (next < published) { return; }
+            waiter = Thread.currentThread();
+            if (next >= published) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+            waiter = null;
+        }
+
+        // Chunks skipped or overwritten before this cursor could deliver them intact
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        // Of the dropped chunks, those overwritten while they were being copied out
+        public long getTornCount() {
+            return torn;
+        }
+
+        public long getLag() {
+            return published - next;
+        }
+    }
+}
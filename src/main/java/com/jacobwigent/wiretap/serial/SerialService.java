@@ -1,25 +1,30 @@
 package com.jacobwigent.wiretap.serial;
 
 import com.fazecast.jSerialComm.SerialPort;
-import com.fazecast.jSerialComm.SerialPortDataListener;
-import com.fazecast.jSerialComm.SerialPortEvent;
 
-import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/*
+    Entry point to the serial layer. The static methods drive the session shown in the main window;
+    openSession() adds further ports that are captured alongside it.
+ */
 public class SerialService {
     private static ArrayList<Integer> baudRates = new ArrayList<>(Arrays.asList(9600, 19200, 38400, 57600, 115200, 230400, 460800, 921600));
 
-    private static SerialPort currentPort;
-    private static ArrayList<SerialListener> listeners = new ArrayList<>();
+    private static final PortSession currentSession = new PortSession();
+    private static final List<PortSession> sessions = new CopyOnWriteArrayList<>(List.of(currentSession));
 
     public static void addListener(SerialListener l) {
-        listeners.add(l);
+        currentSession.addListener(l);
     }
 
-    private static long currentConnectionStartTime;
+    public static void addByteListener(SerialByteListener l) {
+        currentSession.addByteListener(l);
+    }
 
     public static String[] getAvailablePortNames() {
         SerialPort[] serialPorts = SerialPort.getCommPorts();
@@ -28,19 +33,26 @@ public class SerialService {
         for (int i = 0; i < serialPorts.length; i++) {
             portNames[i] = serialPorts[i].getSystemPortName();
         }
+        // Synthetic ports are opt-in, for load testing without hardware
+        if (Boolean.getBoolean("wiretap.syntheticPorts")) {
+            String[] withSynthetic = Arrays.copyOf(portNames, portNames.length + SyntheticBackend.PORT_NAMES.length);
+            System.arraycopy(SyntheticBackend.PORT_NAMES, 0, withSynthetic, portNames.length, SyntheticBackend.PORT_NAMES.length);
+            return withSynthetic;
+        }
         return portNames;
     }
 
     public static boolean tryConnect() {
-        if (!currentPort.openPort()) { return false; }
-        addEventListeners(currentPort);
-        currentConnectionStartTime = System.currentTimeMillis();
-        return true;
+        return currentSession.open();
     }
 
     public static boolean tryDisconnect() {
-        if (!currentPort.isOpen()) return true;
-        return currentPort.closePort();
+        return currentSession.close();
+    }
+
+    // Queues bytes for the main port; false if it isn't open or the write queue is full
+    public static boolean send(byte[] data) {
+        return currentSession.send(data);
     }
 
     public static ArrayList<Integer> getBaudRates() {
@@ -51,61 +63,57 @@ public class SerialService {
         SerialService.baudRates = baudRates;
     }
 
-    private static void addEventListeners(SerialPort port) {
-        port.addDataListener(new SerialPortDataListener() {
-            @Override
-            public int getListeningEvents() {
-                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE | SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
-            }
-
-            @Override
-            public void serialEvent(SerialPortEvent event) {
-                switch (event.getEventType()) {
-                    case SerialPort.LISTENING_EVENT_DATA_AVAILABLE:
-                        byte[] byteData = new byte[port.bytesAvailable()];
-                        int numRead = port.readBytes(byteData, byteData.length);
-                        String message = new String(byteData, 0, numRead);
-                        if (listeners != null) {
-                            for (SerialListener l : listeners) {
-                                l.onSerialData(new SerialMessage(getElapsedConnectionTime(), LocalDateTime.now(), message));
-                            }
-                        }
-                        break;
-
-                    case SerialPort.LISTENING_EVENT_PORT_DISCONNECTED:
-                        if (listeners != null) {
-                            for (SerialListener l : listeners) {
-                                l.onDisconnect();
-                            }
-                        }
-                        break;
-                }
-            }
-        });
+    // Creates an additional, independent session; add listeners to it before opening
+    public static PortSession openSession(String portName, int baudRate) {
+        PortSession session = new PortSession(portName);
+        session.setBaudRate(baudRate);
+        sessions.add(session);
+        return session;
+    }
+
+    public static PortSession openSession(PortBackend backend) {
+        PortSession session = new PortSession(backend);
+        sessions.add(session);
+        return session;
+    }
+
+    public static void closeSession(PortSession session) {
+        if (session == currentSession) { return; }
+        session.dispose();
+        sessions.remove(session);
+    }
+
+    public static PortSession getCurrentSession() {
+        return currentSession;
+    }
+
+    public static List<PortSession> getSessions() {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    public static long getDroppedChunkCount() {
+        return currentSession.getDroppedChunkCount();
     }
 
     public static boolean isConnected() {
-        if (currentPort == null) { return false; }
-        return currentPort.isOpen();
+        return currentSession.isOpen();
     }
 
     public static int getCurrentBaudRate() {
-        if (currentPort == null) { return 0; }
-        return currentPort.getBaudRate();
+        return currentSession.getBaudRate();
     }
 
     public static void selectBaudRate(int baudRate) {
-        if(currentPort == null) { return; }
-        currentPort.setBaudRate(baudRate);
+        currentSession.setBaudRate(baudRate);
         //TODO: Live baud rate updates?
     }
 
     public static void selectPort(String portName) {
-        currentPort = SerialPort.getCommPort(portName);
+        currentSession.selectPort(portName);
     }
 
-    public static SerialPort getCurrentPort() {
-        return currentPort;
+    public static PortBackend getCurrentPort() {
+        return currentSession.getPort();
     }
 
     public static SerialPort[] getAvailablePorts() {
@@ -113,17 +121,17 @@ public class SerialService {
     }
 
     public static long getElapsedConnectionTime() {
-        if(currentPort == null) { return 0; }
-        if(!currentPort.isOpen()) { return 0; }
-        return System.currentTimeMillis() - currentConnectionStartTime;
+        return currentSession.getElapsedConnectionTime();
+    }
+
+    public static long getElapsedConnectionNanos() {
+        return currentSession.getElapsedConnectionNanos();
     }
 
     public static void kill() {
-        if (currentPort == null) {
-            return;
+        for (PortSession session : sessions) {
+            session.dispose();
         }
-        currentPort.closePort();
-        currentPort = null;
-        listeners = null;
+        sessions.clear();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package com.jacobwigent.wiretap.serial;
+
+/*
+    Notified on the session's writer thread just before each batch of bytes is handed to the port, with the
+    System.nanoTime() of that moment. The array is the writer's batch buffer and is only
+    valid until the call returns. Keep this cheap; the next write waits for it.
+ */
+public interface SerialWriteListener {
+    void onSerialWrite(byte[] data, int offset, int length, long timestampNanos);
+}
@@ -0,0 +1,195 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Dedicated thread that drains queued payloads into the open port.
+    Senders only append to a lock-free queue, so neither the UI nor a script ever blocks on the port. Small
+    payloads queued back to back are packed into one write, and an optional byte rate and inter-byte delay
+    pace the output for devices that can't take it at line speed. The reader is never involved.
+ */
+class SerialWriter implements Runnable {
+
+    static final int BATCH_SIZE = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int JOIN_TIMEOUT_MILLIS = 500;
+
+    private final PortBackend port;
+    private final List<SerialWriteListener> listeners;
+    private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final long maxQueuedBytes;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private volatile long bytesPerSecond = 0;
+    private volatile long interByteDelayNanos = 0;
+    private volatile long bytesWritten = 0;
+
+    // Writer-thread state
+    private final byte[] batch = new byte[BATCH_SIZE];
+    private byte[] current;
+    private int currentOffset;
+    private long paceStartNanos;
+    // -1 until the rate clock starts with the next write
+    private long pacedBytes = -1;
+
+    SerialWriter(PortBackend port, long maxQueuedBytes, List<SerialWriteListener> listeners) {
+        this.port = port;
+        this.listeners = listeners;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.thread = new Thread(this, "serial-writer-" + port.getSystemPortName());
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // Stops writing; whatever is still queued is dropped
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    void join() throws InterruptedException {
+        if (Thread.currentThread() != thread) {
+            thread.join(JOIN_TIMEOUT_MILLIS);
+        }
+    }
+
+    // Queues the payload; false if that would exceed the queue limit. The array must not be modified afterwards.
+    boolean offer(byte[] data) {
+        if (!running) { return false; }
+        long queued = queuedBytes.addAndGet(data.length);
+        if (queued > maxQueuedBytes && queued != data.length) {
+            queuedBytes.addAndGet(-data.length);
+            return false;
+        }
+        queue.add(data);
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    void setInterByteDelayNanos(long interByteDelayNanos) {
+        this.interByteDelayNanos = interByteDelayNanos;
+    }
+
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // Drops everything not yet written
+    void clear() {
+        byte[] data;
+        while ((data = queue.poll()) != null) {
+            queuedBytes.addAndGet(-data.length);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int allowed = allowance();
+            int n = allowed > 0 ? fillBatch(allowed) : 0;
+            if (n == 0) {
+                if (current == null && queue.isEmpty()) {
+                    // Idle: rate credit doesn't build up while there is nothing to send
+                    pacedBytes = -1;
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                continue;
+            }
+            if (!write(n)) { return; }
+            if (interByteDelayNanos > 0) {
+                LockSupport.parkNanos(this, interByteDelayNanos);
+            }
+        }
+    }
+
+    // Bytes that may be written now under the rate and delay settings, sleeping briefly if none
+    private int allowance() {
+        if (interByteDelayNanos > 0) { return 1; }
+        long rate = bytesPerSecond;
+        if (rate <= 0) { return BATCH_SIZE; }
+        long now = System.nanoTime();
+        if (pacedBytes < 0) {
+            paceStartNanos = now;
+            pacedBytes = 0;
+        }
+        // Move the origin forward a second at a time so the product below can't overflow under steady sending
+        while (pacedBytes >= rate) {
+            paceStartNanos += 1_000_000_000L;
+            pacedBytes -= rate;
+        }
+        long elapsed = Math.min(now - paceStartNanos, 2_000_000_000L);
+        long due = elapsed * rate / 1_000_000_000L - pacedBytes;
+        if (due <= 0) {
+            long waitNanos = Math.min(IDLE_PARK_NANOS, Math.max(100_000L, (1 - due) * 1_000_000_000L / rate));
+            LockSupport.parkNanos(this, waitNanos);
+            return 0;
+        }
+        // Allow a small burst at most, so stalls don't turn into a flood
+        return (int) Math.min(Math.min(due, BATCH_SIZE), Math.max(1, rate / 50));
+    }
+
+    // Packs queued payloads into the batch, up to max bytes
+    private int fillBatch(int max) {
+        int n = 0;
+        while (n < max) {
+            if (current == null) {
+                current = queue.poll();
+                currentOffset = 0;
+                if (current == null) { break; }
+            }
+            int count = Math.min(max - n, current.length - currentOffset);
+            System.arraycopy(current, currentOffset, batch, n, count);
+            n += count;
+            currentOffset += count;
+            if (currentOffset == current.length) {
+                queuedBytes.addAndGet(-current.length);
+                current = null;
+            }
+        }
+        return n;
+    }
+
+    private boolean write(int length) {
+        // Listeners hear about the write first, so a fast reply can never be seen before its command
+        long startNanos = System.nanoTime();
+        for (SerialWriteListener listener : listeners) {
+            listener.onSerialWrite(batch, 0, length, startNanos);
+        }
+        int offset = 0;
+        while (offset < length) {
+            int written = port.writeBytes(batch, offset, length - offset);
+            if (written < 0) {
+                running = false;
+                return false;
+            }
+            if (written == 0) {
+                // Port buffer full; let it drain
+                LockSupport.parkNanos(this, 1_000_000L);
+            }
+            offset += written;
+        }
+        bytesWritten += length;
+        if (pacedBytes >= 0) {
+            pacedBytes += length;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/*
+    Incremental bytes-to-text decoding for line data that arrives in arbitrary pieces.
+    A multi-byte sequence cut off at the end of one read is held back and completed by the next one instead of
+    being decoded as two broken halves. Pure ASCII pieces skip the decoder entirely when the charset allows it,
+    and the buffers are reused, so steady-state decoding doesn't allocate.
+ */
+public class StreamingDecoder {
+
+    private static final int CHAR_BUFFER_SIZE = 4096;
+
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private final ByteBuffer pending = ByteBuffer.allocate(16);
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+    // Last array we wrapped; pieces mostly come from the same framer or ring array
+    private byte[] wrappedArray;
+    private ByteBuffer wrapped;
+
+    public StreamingDecoder(Charset charset) {
+        this.charset = charset;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = decodesAsciiAsIs(charset);
+    }
+
+    private static boolean decodesAsciiAsIs(Charset charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ascii.length) { return false; }
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.charAt(i) != i) { return false; }
+        }
+        return true;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void decode(byte[] data, int offset, int length, LineStore out) {
+        if (pending.position() == 0 && asciiCompatible && isAscii(data, offset, length)) {
+            out.append(data, offset, length);
+            return;
+        }
+
+        ByteBuffer in = wrap(data, offset, length);
+        // Finish the sequence the previous piece ended in, one byte at a time
+        while (pending.position() > 0 && in.hasRemaining()) {
+            pending.put(in.get());
+            pending.flip();
+            decode(pending, false, out);
+            pending.compact();
+            if (!pending.hasRemaining()) {
+                // Not a sequence this charset will ever complete
+                pending.flip();
+                decode(pending, true, out);
+                pending.clear();
+                decoder.reset();
+            }
+        }
+        decode(in, false, out);
+        if (in.hasRemaining()) {
+            pending.put(in);
+        }
+    }
+
+    // Called at a line break; a sequence still incomplete there is malformed and becomes a replacement char
+    public void endOfLine(LineStore out) {
+        if (pending.position() > 0) {
+            pending.flip();
+            decode(pending, true, out);
+            decoder.flush(chars);
+            drain(out);
+            pending.clear();
+        }
+        decoder.reset();
+    }
+
+    public void reset() {
+        pending.clear();
+        decoder.reset();
+    }
+
+    private void decode(ByteBuffer in, boolean endOfInput, LineStore out) {
+        while (true) {
+            CoderResult result = decoder.decode(in, chars, endOfInput);
+            drain(out);
+            if (!result.isOverflow()) { return; }
+        }
+    }
+
+    private void drain(LineStore out) {
+        if (chars.position() > 0) {
+            out.append(chars.array(), 0, chars.position());
+            chars.clear();
+        }
+    }
+
+    private ByteBuffer wrap(byte[] data, int offset, int length) {
+        if (data != wrappedArray) {
+            wrappedArray = data;
+            wrapped = ByteBuffer.wrap(data);
+        }
+        wrapped.limit(offset + length).position(offset);
+        return wrapped;
+    }
+
+    private static boolean isAscii(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] < 0) { return false; }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package com.jacobwigent.wiretap.serial;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+    In-process stand-in for a serial device, for soak and throughput runs without hardware.
+    It plays generated text lines or a recorded file in a loop at a paced byte rate (the port's baud rate
+    as 8N1 by default, or unlimited), optionally in bursts, and echoes anything written to it.
+
+    Port names: SIM:TEXT, SIM:MAX (unlimited rate), SIM:BURST, SIM:LOOPBACK (echo only) and SIM:REPLAY:<file>.
+ */
+public class SyntheticBackend implements PortBackend {
+
+    public static final String PREFIX = "SIM:";
+    public static final String[] PORT_NAMES = { "SIM:TEXT", "SIM:MAX", "SIM:BURST", "SIM:LOOPBACK" };
+
+    // Follow the baud rate; 10 bits per byte on the wire
+    public static final long RATE_FROM_BAUD = -1;
+    public static final long RATE_UNLIMITED = 0;
+
+    private static final int READ_TIMEOUT_MILLIS = 100;
+    private static final int LOOPBACK_CAPACITY = 1 << 16;
+    private static final int GENERATED_LINES = 4096;
+
+    private final String name;
+    private final ByteBuffer source;
+
+    private volatile boolean open = false;
+    private int baudRate = 115200;
+    private long bytesPerSecond = RATE_FROM_BAUD;
+    private int burstBytes = 0;
+    private long burstGapNanos = 0;
+
+    // Reader-thread pacing state
+    private long startNanos;
+    private long produced;
+    private long nextBurstNanos;
+
+    // Written bytes waiting to be read back
+    private final byte[] loopback = new byte[LOOPBACK_CAPACITY];
+    private int loopbackHead = 0;
+    private int loopbackSize = 0;
+
+    public SyntheticBackend(String name, ByteBuffer source) {
+        this.name = name;
+        this.source = source == null ? null : source.duplicate();
+    }
+
+    public static boolean isSyntheticName(String portName) {
+        return portName != null && portName.toUpperCase(Locale.ROOT).startsWith(PREFIX);
+    }
+
+    public static SyntheticBackend forName(String portName) {
+        String spec = portName.substring(PREFIX.length());
+        String upper = spec.toUpperCase(Locale.ROOT);
+        if (upper.startsWith("REPLAY:")) {
+            return new SyntheticBackend(portName, mapFile(Paths.get(spec.substring("REPLAY:".length()))));
+        }
+        switch (upper) {
+            case "LOOPBACK":
+                return new SyntheticBackend(portName, null);
+            case "MAX": {
+                SyntheticBackend backend = new SyntheticBackend(portName, generateText());
+                backend.setBytesPerSecond(RATE_UNLIMITED);
+                return backend;
+            }
+            case "BURST": {
+                SyntheticBackend backend = new SyntheticBackend(portName, generateText());
+                backend.setBurst(4096, 40);
+                return backend;
+            }
+            default:
+                return new SyntheticBackend(portName, generateText());
+        }
+    }
+
+    // Numeric sensor-style lines, the shape most firmware prints
+    public static ByteBuffer generateText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < GENERATED_LINES; i++) {
+            double phase = i * 2 * Math.PI / GENERATED_LINES;
+            sb.append("t=").append(i)
+                    .append(" v=").append(String.format(Locale.ROOT, "%.3f", 3.3 + Math.sin(phase)))
+                    .append(" a=").append(String.format(Locale.ROOT, "%.2f", 100 * Math.cos(3 * phase)))
+                    .append("\r\n");
+        }
+        return ByteBuffer.wrap(sb.toString().getBytes());
+    }
+
+    private static ByteBuffer mapFile(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    // Delivers the stream as bursts of burstBytes separated by gapMillis of silence
+    public void setBurst(int burstBytes, int gapMillis) {
+        this.burstBytes = burstBytes;
+        this.burstGapNanos = TimeUnit.MILLISECONDS.toNanos(gapMillis);
+    }
+
+    @Override
+    public String getSystemPortName() {
+        return name;
+    }
+
+    @Override
+    public String getDescriptivePortName() {
+        return "Synthetic " + name.substring(PREFIX.length());
+    }
+
+    @Override
+    public boolean openPort() {
+        startNanos = System.nanoTime();
+        nextBurstNanos = startNanos;
+        produced = 0;
+        if (source != null) {
+            source.rewind();
+        }
+        open = true;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean closePort() {
+        open = false;
+        notifyAll();
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) {
+        this.baudRate = baudRate;
+    }
+
+    @Override
+    public int readBytes(byte[] buffer, int offset, int maxLength) {
+        if (!open) { return -1; }
+        int echoed = readLoopback(buffer, offset, maxLength);
+        if (echoed != 0 || source == null || source.capacity() == 0) {
+            return echoed;
+        }
+
+        int allowed = burstBytes > 0 ? awaitBurst(maxLength) : awaitRate(maxLength);
+        if (allowed <= 0) {
+            return open ? 0 : -1;
+        }
+        int filled = 0;
+        while (filled < allowed) {
+            if (!source.hasRemaining()) {
+                source.rewind();
+            }
+            int n = Math.min(allowed - filled, source.remaining());
+            source.get(buffer, offset + filled, n);
+            filled += n;
+        }
+        produced += filled;
+        return filled;
+    }
+
+    private int awaitRate(int maxLength) {
+        long rate = bytesPerSecond == RATE_FROM_BAUD ? baudRate / 10 : bytesPerSecond;
+        if (rate == RATE_UNLIMITED) {
+            return maxLength;
+        }
+        // Move the origin forward a second at a time so the products below stay far from overflowing
+        while (produced >= rate) {
+            startNanos += 1_000_000_000L;
+            produced -= rate;
+        }
+        long due = dueBytes(rate);
+        if (due <= 0) {
+            long waitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MILLIS),
+                    Math.max(1_000_000L, (1 - due) * 1_000_000_000L / rate));
+            sleepNanos(waitNanos);
+            due = dueBytes(rate);
+        }
+        // Don't let credit from a stall turn into one huge read
+        if (due > rate) {
+            startNanos = System.nanoTime() - produced * 1_000_000_000L / rate;
+            due = rate;
+        }
+        return (int) Math.min(maxLength, due);
+    }
+
+    // Bytes owed at this rate since startNanos; past a couple of seconds the credit is capped anyway
+    private long dueBytes(long rate) {
+        long elapsed = Math.min(System.nanoTime() - startNanos, 3_000_000_000L);
+        return elapsed * rate / 1_000_000_000L - produced;
+    }
+
+    private int awaitBurst(int maxLength) {
+        long wait = nextBurstNanos - System.nanoTime();
+        if (wait > 0) {
+            sleepNanos(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MILLIS)));
+            if (nextBurstNanos - System.nanoTime() > 0) { return 0; }
+        }
+        nextBurstNanos = System.nanoTime() + burstGapNanos;
+        return Math.min(maxLength, burstBytes);
+    }
+
+    private void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized int readLoopback(byte[] buffer, int offset, int maxLength) {
+        if (loopbackSize == 0 && source == null) {
+            try {
+                wait(READ_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int n = Math.min(maxLength, loopbackSize);
+        for (int i = 0; i < n; i++) {
+            buffer[offset + i] = loopback[(loopbackHead + i) % LOOPBACK_CAPACITY];
+        }
+        loopbackHead = (loopbackHead + n) % LOOPBACK_CAPACITY;
+        loopbackSize -= n;
+        return n;
+    }
+
+    @Override
+    public synchronized int writeBytes(byte[] buffer, int offset, int length) {
+        if (!open) { return -1; }
+        int n = Math.min(length, LOOPBACK_CAPACITY - loopbackSize);
+        int tail = (loopbackHead + loopbackSize) % LOOPBACK_CAPACITY;
+        for (int i = 0; i < n; i++) {
+            loopback[(tail + i) % LOOPBACK_CAPACITY] = buffer[offset + i];
+        }
+        loopbackSize += n;
+        notifyAll();
+        return n;
+    }
+}
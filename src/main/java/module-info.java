@@ -5,11 +5,19 @@ module com.jacobwigent.wiretap {
     requires org.controlsfx.controls;
     requires com.fazecast.jSerialComm;
     requires java.desktop;
+    requires java.management;
 
     opens com.jacobwigent.wiretap to javafx.fxml;
     exports com.jacobwigent.wiretap;
     exports com.jacobwigent.wiretap.display;
     opens com.jacobwigent.wiretap.display to javafx.fxml;
+    exports com.jacobwigent.wiretap.capture;
+    exports com.jacobwigent.wiretap.export;
+    exports com.jacobwigent.wiretap.metrics;
+    exports com.jacobwigent.wiretap.plot;
+    exports com.jacobwigent.wiretap.protocol;
+    exports com.jacobwigent.wiretap.script;
+    exports com.jacobwigent.wiretap.search;
     exports com.jacobwigent.wiretap.serial;
     opens com.jacobwigent.wiretap.serial to javafx.fxml;
 }
\ No newline at end of file
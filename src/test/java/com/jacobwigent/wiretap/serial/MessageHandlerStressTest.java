@@ -0,0 +1,203 @@
+package com.jacobwigent.wiretap.serial;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/*
+    One thread feeds a detached handler through onSerialBytes() while others freeze, reset and read its lines,
+    the way the dispatcher and the FX thread share it. Line i always carries the text "line-i", so any torn or
+    misplaced line shows up as a mismatch.
+ */
+@Timeout(120)
+class MessageHandlerStressTest {
+
+    private static final int LINES = 200_000;
+
+    @TempDir
+    Path captureRoot;
+
+    private MessageHandler handler;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean feeding;
+
+    @BeforeEach
+    void setUp() {
+        handler = new MessageHandler(() -> {}, captureRoot);
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.close();
+    }
+
+    @Test
+    void linesSurviveConcurrentFreezeAndReset() throws Exception {
+        // Chunks end on line boundaries here, so a reset never splits a line
+        runWithFeeder(true, this::freezeAndReset);
+
+        LineStore lines = handler.getLines();
+        assertEquals(LINES, lines.getLineCount());
+        assertLinesIntact(lines);
+        assertTrue(handler.getLineCount() <= LINES);
+
+        handler.reset();
+        assertEquals(0, handler.getLineCount());
+        assertEquals(0, handler.getAccessibleMessageCount());
+    }
+
+    @Test
+    void linesSplitAcrossChunksStayIntact() throws Exception {
+        runWithFeeder(false, this::freezeOnly);
+
+        LineStore lines = handler.getLines();
+        assertEquals(LINES, lines.getLineCount());
+        assertEquals(LINES, handler.getLineCount());
+        assertLinesIntact(lines);
+    }
+
+    private void runWithFeeder(boolean lineAligned, Runnable control) throws InterruptedException {
+        feeding = true;
+        List<Thread> threads = new ArrayList<>();
+        threads.add(worker("feeder", () -> feed(lineAligned)));
+        threads.add(worker("control", control));
+        threads.add(worker("reader-1", this::readLines));
+        threads.add(worker("reader-2", this::readLines));
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+        handler.setFreeze(false);
+        assertFalse(handler.isFrozen());
+    }
+
+    private Thread worker(String name, Runnable body) {
+        Thread t = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                feeding = false;
+            }
+        }, "stress-" + name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private void feed(boolean lineAligned) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] buffer = new byte[64 * 1024];
+        int line = 0;
+        try {
+            while (line < LINES && failure.get() == null) {
+                // Fill the buffer with whole lines, then hand it over in chunks like a port read would
+                int filled = 0;
+                List<Integer> lineEnds = new ArrayList<>();
+                while (line < LINES && filled < buffer.length - 32) {
+                    byte[] text = ("line-" + line + "\n").getBytes(StandardCharsets.US_ASCII);
+                    System.arraycopy(text, 0, buffer, filled, text.length);
+                    filled += text.length;
+                    lineEnds.add(filled);
+                    line++;
+                }
+                int offset = 0;
+                int nextEnd = 0;
+                while (offset < filled) {
+                    int end;
+                    if (lineAligned) {
+                        nextEnd = Math.min(lineEnds.size() - 1, nextEnd + random.nextInt(8));
+                        end = lineEnds.get(nextEnd++);
+                    } else {
+                        end = Math.min(filled, offset + 1 + random.nextInt(64));
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, offset, end - offset).asReadOnlyBuffer();
+                    handler.onSerialBytes(chunk, System.nanoTime());
+                    offset = end;
+                }
+            }
+        } finally {
+            feeding = false;
+        }
+    }
+
+    private void freezeAndReset() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (feeding) {
+            handler.setFreeze(true);
+            int frozenCount = handler.getAccessibleMessageCount();
+            Thread.yield();
+            assertEquals(frozenCount, handler.getAccessibleMessageCount(), "capture grew while frozen");
+            if (random.nextInt(4) == 0) {
+                // Resetting while frozen (as connecting does) leaves an empty frozen view
+                Thread.yield();
+                handler.reset();
+                assertEquals(0, handler.getAccessibleMessageCount(), "reset while frozen");
+                assertTrue(handler.getLineCount() >= 0);
+                Thread.yield();
+                assertEquals(0, handler.getAccessibleMessageCount(), "capture grew while frozen after a reset");
+            }
+            handler.setFreeze(false);
+            if (random.nextInt(4) == 0) {
+                handler.reset();
+                assertTrue(handler.getLineCount() >= 0);
+            }
+            Thread.yield();
+        }
+    }
+
+    private void freezeOnly() {
+        while (feeding) {
+            handler.setFreeze(true);
+            Thread.yield();
+            handler.setFreeze(false);
+            Thread.yield();
+        }
+    }
+
+    private void readLines() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LineStore lines = handler.getLines();
+        while (feeding) {
+            // The last line may still be receiving text; everything before it is complete
+            int complete = lines.getLineCount() - 1;
+            if (complete <= 0) {
+                Thread.yield();
+                continue;
+            }
+            int line = random.nextInt(complete);
+            assertEquals("line-" + line, lines.getLineText(line, 0, Integer.MAX_VALUE));
+            if (line > 0) {
+                assertTrue(lines.getLineTime(line - 1) <= lines.getLineTime(line), "line times out of order");
+            }
+        }
+    }
+
+    private static void assertLinesIntact(LineStore lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int line = lines.getFirstLine(); line < lines.getLineCount(); line++) {
+            sb.setLength(0);
+            lines.appendLineText(line, sb);
+            assertEquals("line-" + line, sb.toString());
+        }
+    }
+}